@@ -0,0 +1,176 @@
+package ru.projectteamwork.finance_recommendations.benchmark;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.jdbcx.JdbcDataSource;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.support.NoOpCacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.projectteamwork.finance_recommendations.api.QueryItem;
+import ru.projectteamwork.finance_recommendations.api.RuleRequest;
+import ru.projectteamwork.finance_recommendations.domain.DynamicRule;
+import ru.projectteamwork.finance_recommendations.domain.enums.QueryType;
+import ru.projectteamwork.finance_recommendations.domain.service.RuleMapper;
+import ru.projectteamwork.finance_recommendations.domain.service.RuleService;
+import ru.projectteamwork.finance_recommendations.domain.service.RuleStatService;
+import ru.projectteamwork.finance_recommendations.evaluator.CompiledRule;
+import ru.projectteamwork.finance_recommendations.evaluator.CompiledRuleSet;
+import ru.projectteamwork.finance_recommendations.evaluator.RecommendationEngine;
+import ru.projectteamwork.finance_recommendations.evaluator.RuleCompiler;
+import ru.projectteamwork.finance_recommendations.repository.impl.ColumnarFactStore;
+import ru.projectteamwork.finance_recommendations.repository.impl.RecommendationsRepositoryImpl;
+import ru.projectteamwork.finance_recommendations.repository.impl.UserFactRollup;
+import ru.projectteamwork.finance_recommendations.rules.BuiltInRules;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Заполняет БД транзакций H2 в памяти синтетическими данными и собирает
+ * компоненты движка рекомендаций без Spring-контекста.
+ */
+final class BenchmarkFixture {
+
+    static final String[] PRODUCT_TYPES = {"DEBIT", "CREDIT", "SAVING", "INVEST"};
+    static final String[] TX_TYPES = {"DEPOSIT", "WITHDRAW"};
+    private static final String[] OPERATORS = {">", "<", "=", ">=", "<="};
+
+    final JdbcTemplate jdbcTemplate;
+    final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    final List<UUID> userIds = new ArrayList<>();
+    final List<RuleRequest> ruleRequests = new ArrayList<>();
+    final List<DynamicRule> ruleEntities = new ArrayList<>();
+    final List<CompiledRule> compiledRules = new ArrayList<>();
+
+    private BenchmarkFixture(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    static BenchmarkFixture create(int users, int rules, int transactionsPerUser, long seed) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:bench-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        BenchmarkFixture fixture = new BenchmarkFixture(new JdbcTemplate(dataSource));
+        Random random = new Random(seed);
+        fixture.seedTransactions(users, transactionsPerUser, random);
+        fixture.seedRules(rules, random);
+        return fixture;
+    }
+
+    private void seedTransactions(int users, int transactionsPerUser, Random random) {
+        jdbcTemplate.execute("CREATE TABLE products (id UUID PRIMARY KEY, type VARCHAR(255), name VARCHAR(255))");
+        jdbcTemplate.execute("CREATE TABLE transactions (id UUID PRIMARY KEY, product_id UUID, user_id UUID, " +
+                "type VARCHAR(255), amount INT)");
+
+        List<UUID> productIds = new ArrayList<>();
+        List<Object[]> products = new ArrayList<>();
+        for (String type : PRODUCT_TYPES) {
+            for (int i = 0; i < 3; i++) {
+                UUID id = UUID.randomUUID();
+                productIds.add(id);
+                products.add(new Object[]{id, type, type + " " + i});
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO products (id, type, name) VALUES (?, ?, ?)", products);
+
+        List<Object[]> batch = new ArrayList<>();
+        for (int u = 0; u < users; u++) {
+            UUID userId = UUID.randomUUID();
+            userIds.add(userId);
+            for (int t = 0; t < transactionsPerUser; t++) {
+                batch.add(new Object[]{
+                        UUID.randomUUID(),
+                        productIds.get(random.nextInt(productIds.size())),
+                        userId,
+                        TX_TYPES[random.nextInt(TX_TYPES.length)],
+                        random.nextInt(50_000)
+                });
+            }
+            if (batch.size() >= 10_000) {
+                insertTransactions(batch);
+            }
+        }
+        insertTransactions(batch);
+        jdbcTemplate.execute("CREATE INDEX idx_transactions_user ON transactions (user_id)");
+    }
+
+    private void insertTransactions(List<Object[]> batch) {
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO transactions (id, product_id, user_id, type, amount) VALUES (?, ?, ?, ?, ?)", batch);
+        batch.clear();
+    }
+
+    private void seedRules(int rules, Random random) {
+        for (int r = 0; r < rules; r++) {
+            List<QueryItem> items = new ArrayList<>();
+            int size = 1 + random.nextInt(4);
+            for (int q = 0; q < size; q++) {
+                items.add(randomQuery(random));
+            }
+            RuleRequest request = new RuleRequest("Продукт " + r, UUID.randomUUID(), "Текст продукта " + r, items);
+            DynamicRule entity = RuleMapper.toEntity(request);
+            entity.setId(UUID.randomUUID());
+            ruleRequests.add(request);
+            ruleEntities.add(entity);
+            compiledRules.add(RuleCompiler.compile(entity));
+        }
+    }
+
+    static QueryItem randomQuery(Random random) {
+        String product = PRODUCT_TYPES[random.nextInt(PRODUCT_TYPES.length)];
+        String tx = TX_TYPES[random.nextInt(TX_TYPES.length)];
+        String operator = OPERATORS[random.nextInt(OPERATORS.length)];
+        boolean negate = random.nextInt(4) == 0;
+        return switch (random.nextInt(4)) {
+            case 0 -> new QueryItem(QueryType.USER_OF, List.of(product), negate);
+            case 1 -> new QueryItem(QueryType.ACTIVE_USER_OF, List.of(product), negate);
+            case 2 -> new QueryItem(QueryType.TRANSACTION_SUM_COMPARE,
+                    List.of(product, tx, operator, String.valueOf(random.nextInt(100_000))), negate);
+            default -> new QueryItem(QueryType.TRANSACTION_SUM_COMPARE_DEPOSIT_WITHDRAW,
+                    List.of(product, "DEPOSIT", operator, product, "WITHDRAW"), negate);
+        };
+    }
+
+    RecommendationsRepositoryImpl repository(CacheManager cacheManager) {
+        return new RecommendationsRepositoryImpl(
+                jdbcTemplate,
+                cacheManager,
+                new StaticListableBeanFactory().getBeanProvider(ColumnarFactStore.class),
+                new StaticListableBeanFactory().getBeanProvider(UserFactRollup.class),
+                meterRegistry,
+                500
+        );
+    }
+
+    RecommendationsRepositoryImpl uncachedRepository() {
+        return repository(new NoOpCacheManager());
+    }
+
+    RecommendationEngine engine() {
+        List<CompiledRule> rules = new ArrayList<>(new BuiltInRules().compiled());
+        rules.addAll(compiledRules);
+        return new RecommendationEngine(
+                new FixedRuleService(new CompiledRuleSet(rules)),
+                new RuleStatService(null, null, null),
+                meterRegistry,
+                64
+        );
+    }
+
+    private static final class FixedRuleService extends RuleService {
+        private final CompiledRuleSet rules;
+
+        private FixedRuleService(CompiledRuleSet rules) {
+            super(null, null, null, null);
+            this.rules = rules;
+        }
+
+        @Override
+        public CompiledRuleSet findAllCompiled() {
+            return rules;
+        }
+    }
+}
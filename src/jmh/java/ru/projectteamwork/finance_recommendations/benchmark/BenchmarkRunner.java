@@ -0,0 +1,53 @@
+package ru.projectteamwork.finance_recommendations.benchmark;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Запускает бенчмарки в однопоточном и многопоточном режимах с профилировщиком GC.
+ * Параметры: bench.include, bench.users, bench.rules, bench.threads.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String include = System.getProperty("bench.include", ".*");
+        String users = System.getProperty("bench.users", "10000");
+        String rules = System.getProperty("bench.rules", "100");
+        int threads = Integer.getInteger("bench.threads", Runtime.getRuntime().availableProcessors());
+
+        for (int threadCount : new int[]{1, threads}) {
+            Options options = new OptionsBuilder()
+                    .include(RecommendationsBenchmark.class.getName() + "\\." + include)
+                    .mode(Mode.Throughput)
+                    .mode(Mode.AverageTime)
+                    .timeUnit(TimeUnit.MICROSECONDS)
+                    .threads(threadCount)
+                    .param("users", users)
+                    .param("rules", rules)
+                    .addProfiler(GCProfiler.class)
+                    .warmupIterations(3)
+                    .warmupTime(TimeValue.seconds(2))
+                    .measurementIterations(5)
+                    .measurementTime(TimeValue.seconds(2))
+                    .forks(1)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("target/jmh-result-threads-" + threadCount + ".json")
+                    .build();
+            new Runner(options).run();
+            if (threads == 1) {
+                break;
+            }
+        }
+    }
+}
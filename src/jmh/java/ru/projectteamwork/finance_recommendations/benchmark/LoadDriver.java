@@ -0,0 +1,227 @@
+package ru.projectteamwork.finance_recommendations.benchmark;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Нагрузочный клиент для /api/recommendations/{userId} и /api/recommendations/dynamic/{userId}.
+ * <p>
+ * При load.rate &gt; 0 запросы отправляются с постоянной частотой (открытая модель), задержка отсчитывается
+ * от запланированного момента отправки, чтобы замедление сервера не скрывалось очередью клиента.
+ * Иначе load.concurrency потоков отправляют запросы друг за другом (закрытая модель).
+ * Пользователи выбираются из load.user-ids-file по закону Ципфа с показателем load.skew.
+ * Запросы периода прогрева load.warmup-s в отчёт не попадают.
+ * <p>
+ * Кроме общей задержки отчёт показывает отдельно принятые (2xx) и отклонённые (503) запросы,
+ * а в открытой модели — отставание клиента от расписания: если оно сравнимо с задержкой,
+ * её создаёт сам клиент (нехватка CPU или load.max-in-flight), а не сервер.
+ */
+public final class LoadDriver {
+
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    private LoadDriver() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String baseUrl = System.getProperty("load.base-url", "http://localhost:8080");
+        Path userIdsFile = Path.of(System.getProperty("load.user-ids-file", "target/load/user-ids.txt"));
+        String[] endpointNames = System.getProperty("load.endpoints", "recommendations,dynamic").split(",");
+        double rate = Double.parseDouble(System.getProperty("load.rate", "0"));
+        int concurrency = Integer.getInteger("load.concurrency", 16);
+        int maxInFlight = Integer.getInteger("load.max-in-flight", 1024);
+        long durationNanos = TimeUnit.SECONDS.toNanos(Long.getLong("load.duration-s", 60L));
+        long warmupNanos = TimeUnit.SECONDS.toNanos(Long.getLong("load.warmup-s", 10L));
+        double skew = Double.parseDouble(System.getProperty("load.skew", "1.1"));
+
+        List<UUID> userIds = new ArrayList<>();
+        for (String line : Files.readAllLines(userIdsFile)) {
+            if (!line.isBlank()) {
+                userIds.add(UUID.fromString(line.trim()));
+            }
+        }
+        List<Endpoint> endpoints = new ArrayList<>();
+        for (String name : endpointNames) {
+            endpoints.add(new Endpoint(name.trim(), baseUrl + switch (name.trim()) {
+                case "recommendations" -> "/api/recommendations/";
+                case "dynamic" -> "/api/recommendations/dynamic/";
+                default -> throw new IllegalArgumentException("Неизвестная точка нагрузки: " + name);
+            }));
+        }
+
+        ExecutorService httpExecutor = Executors.newFixedThreadPool(Math.max(4, concurrency));
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(httpExecutor)
+                .build();
+        Load load = new Load(client, endpoints, userIds, new ZipfSampler(userIds.size(), skew), System.nanoTime() + warmupNanos);
+        long end = System.nanoTime() + warmupNanos + durationNanos;
+
+        System.out.printf("Нагрузка на %s: %s, пользователей=%d, прогрев %d с, замер %d с%n", baseUrl,
+                rate > 0 ? String.format(Locale.ROOT, "%.0f запросов/с", rate) : concurrency + " потоков",
+                userIds.size(), TimeUnit.NANOSECONDS.toSeconds(warmupNanos), TimeUnit.NANOSECONDS.toSeconds(durationNanos));
+        if (rate > 0) {
+            load.runFixedRate(rate, maxInFlight, end);
+        } else {
+            load.runFixedConcurrency(concurrency, end);
+        }
+        httpExecutor.shutdownNow();
+        report(endpoints, TimeUnit.NANOSECONDS.toSeconds(durationNanos));
+        if (rate > 0) {
+            Histogram lag = load.sendLag;
+            System.out.printf(Locale.ROOT, "отставание отправки от расписания: p50 %.2f мс, p99 %.2f мс, max %.2f мс%n",
+                    millis(lag.getValueAtPercentile(50)), millis(lag.getValueAtPercentile(99)), millis(lag.getMaxValue()));
+        }
+    }
+
+    private static void report(List<Endpoint> endpoints, long seconds) {
+        System.out.printf("%-16s %10s %8s %10s %9s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p999 ms", "max ms");
+        for (Endpoint endpoint : endpoints) {
+            row(endpoint.name, endpoint.latencies, endpoint.errors.sum(), seconds);
+            row("  2xx", endpoint.admitted, 0, seconds);
+            row("  503", endpoint.rejected, endpoint.rejected.getTotalCount(), seconds);
+            if (!endpoint.statuses.isEmpty()) {
+                System.out.printf("%-16s ошибки: %s%n", "", endpoint.statuses);
+            }
+        }
+    }
+
+    private static void row(String name, Histogram h, long errors, long seconds) {
+        System.out.printf(Locale.ROOT, "%-16s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                name, h.getTotalCount(), errors, h.getTotalCount() / (double) Math.max(1, seconds),
+                millis(h.getValueAtPercentile(50)), millis(h.getValueAtPercentile(90)),
+                millis(h.getValueAtPercentile(99)), millis(h.getValueAtPercentile(99.9)), millis(h.getMaxValue()));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private record Load(HttpClient client, List<Endpoint> endpoints, List<UUID> userIds, ZipfSampler users,
+                        long measureFrom, Histogram sendLag) {
+
+        Load(HttpClient client, List<Endpoint> endpoints, List<UUID> userIds, ZipfSampler users, long measureFrom) {
+            this(client, endpoints, userIds, users, measureFrom, new ConcurrentHistogram(MAX_LATENCY_NANOS, 3));
+        }
+
+        void runFixedRate(double rate, int maxInFlight, long end) throws InterruptedException {
+            Semaphore inFlight = new Semaphore(maxInFlight);
+            long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+            long start = System.nanoTime();
+            for (long i = 0; ; i++) {
+                long intended = start + i * periodNanos;
+                if (intended >= end) {
+                    break;
+                }
+                long wait = intended - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                Endpoint endpoint = endpoints.get((int) (i % endpoints.size()));
+                // при исчерпании лимита ожидание входит в задержку: отсчёт идёт от запланированного момента
+                inFlight.acquire();
+                if (intended >= measureFrom) {
+                    sendLag.recordValue(Math.min(Math.max(0, System.nanoTime() - intended), MAX_LATENCY_NANOS));
+                }
+                client.sendAsync(request(endpoint), HttpResponse.BodyHandlers.discarding())
+                        .whenComplete((response, error) -> {
+                            record(endpoint, intended, response, error);
+                            inFlight.release();
+                        });
+            }
+            inFlight.acquire(maxInFlight);
+        }
+
+        void runFixedConcurrency(int concurrency, long end) throws InterruptedException {
+            List<Thread> workers = new ArrayList<>(concurrency);
+            for (int w = 0; w < concurrency; w++) {
+                int offset = w;
+                Thread worker = new Thread(() -> {
+                    for (long i = offset; System.nanoTime() < end; i++) {
+                        Endpoint endpoint = endpoints.get((int) (i % endpoints.size()));
+                        long started = System.nanoTime();
+                        try {
+                            record(endpoint, started, client.send(request(endpoint), HttpResponse.BodyHandlers.discarding()), null);
+                        } catch (IOException e) {
+                            record(endpoint, started, null, e);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                    }
+                }, "load-worker-" + w);
+                worker.start();
+                workers.add(worker);
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        }
+
+        private HttpRequest request(Endpoint endpoint) {
+            UUID userId = userIds.get(users.sample(ThreadLocalRandom.current().nextDouble()));
+            return HttpRequest.newBuilder(URI.create(endpoint.urlPrefix + userId))
+                    .timeout(Duration.ofSeconds(30))
+                    .GET()
+                    .build();
+        }
+
+        private void record(Endpoint endpoint, long started, HttpResponse<?> response, Throwable error) {
+            if (started < measureFrom) {
+                return;
+            }
+            long latency = Math.min(System.nanoTime() - started, MAX_LATENCY_NANOS);
+            endpoint.latencies.recordValue(latency);
+            if (response != null && response.statusCode() / 100 == 2) {
+                endpoint.admitted.recordValue(latency);
+            } else if (response != null && response.statusCode() == 503) {
+                endpoint.rejected.recordValue(latency);
+            }
+            if (error != null || response.statusCode() / 100 != 2) {
+                endpoint.errors.increment();
+                String key = error != null ? error.getClass().getSimpleName() : "HTTP " + response.statusCode();
+                endpoint.statuses.merge(key, 1L, Long::sum);
+            }
+        }
+    }
+
+    private static final class Endpoint {
+        private final String name;
+        private final String urlPrefix;
+        private final Histogram latencies = new ConcurrentHistogram(MAX_LATENCY_NANOS, 3);
+        private final Histogram admitted = new ConcurrentHistogram(MAX_LATENCY_NANOS, 3);
+        private final Histogram rejected = new ConcurrentHistogram(MAX_LATENCY_NANOS, 3);
+        private final LongAdder errors = new LongAdder();
+        private final Map<String, Long> statuses = Collections.synchronizedMap(new LinkedHashMap<>());
+
+        private Endpoint(String name, String urlPrefix) {
+            this.name = name;
+            this.urlPrefix = urlPrefix;
+        }
+    }
+}
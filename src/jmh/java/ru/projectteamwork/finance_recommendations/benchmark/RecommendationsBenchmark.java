@@ -0,0 +1,121 @@
+package ru.projectteamwork.finance_recommendations.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.cache.support.NoOpCacheManager;
+import ru.projectteamwork.finance_recommendations.api.RuleResponse;
+import ru.projectteamwork.finance_recommendations.domain.DynamicRule;
+import ru.projectteamwork.finance_recommendations.domain.service.RuleMapper;
+import ru.projectteamwork.finance_recommendations.domain.service.RuleRegistry;
+import ru.projectteamwork.finance_recommendations.dto.RecommendationDTO;
+import ru.projectteamwork.finance_recommendations.evaluator.CompiledRule;
+import ru.projectteamwork.finance_recommendations.evaluator.CompiledRuleSet;
+import ru.projectteamwork.finance_recommendations.evaluator.DynamicRuleEvaluator;
+import ru.projectteamwork.finance_recommendations.evaluator.RecommendationEngine;
+import ru.projectteamwork.finance_recommendations.repository.UserFactSnapshot;
+import ru.projectteamwork.finance_recommendations.repository.impl.RecommendationsRepositoryImpl;
+import ru.projectteamwork.finance_recommendations.rules.BuiltInRules;
+import ru.projectteamwork.finance_recommendations.service.impl.RecommendationsResultCache;
+import ru.projectteamwork.finance_recommendations.service.impl.RecommendationsServiceImpl;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+@State(Scope.Benchmark)
+public class RecommendationsBenchmark {
+
+    @Param("10000")
+    public int users;
+
+    @Param("100")
+    public int rules;
+
+    @Param("20")
+    public int transactionsPerUser;
+
+    private BenchmarkFixture fixture;
+    private RecommendationsRepositoryImpl repository;
+    private RecommendationEngine engine;
+    private RecommendationsServiceImpl service;
+    private final DynamicRuleEvaluator evaluator = new DynamicRuleEvaluator();
+    private CompiledRuleSet ruleSet;
+    private UUID[] userIds;
+    private String[] userIdStrings;
+    private UserFactSnapshot[] snapshots;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = BenchmarkFixture.create(users, rules, transactionsPerUser, 42L);
+        repository = fixture.uncachedRepository();
+        engine = fixture.engine();
+        // кеш результатов отключён: бенчмарк измеряет полный путь вычисления
+        service = new RecommendationsServiceImpl(repository, engine,
+                new RecommendationsResultCache(new NoOpCacheManager(), new RuleRegistry(null, new BuiltInRules(), null, null), fixture.meterRegistry, 0, 0, false, 1, 1),
+                null, null, fixture.meterRegistry, false, "live", false, 0, 0, 0);
+        ruleSet = new CompiledRuleSet(fixture.compiledRules);
+
+        userIds = fixture.userIds.toArray(new UUID[0]);
+        userIdStrings = new String[userIds.length];
+        snapshots = new UserFactSnapshot[userIds.length];
+        for (int i = 0; i < userIds.length; i++) {
+            userIdStrings[i] = userIds[i].toString();
+        }
+        // Снимки загружаются одним пакетом, чтобы вычислительные бенчмарки не зависели от SQL
+        var loaded = repository.loadFacts(List.of(userIds));
+        for (int i = 0; i < userIds.length; i++) {
+            snapshots[i] = loaded.get(userIds[i]);
+        }
+    }
+
+    private static int nextIndex(int bound) {
+        return ThreadLocalRandom.current().nextInt(bound);
+    }
+
+    @Benchmark
+    public void dynamicRuleEvaluate(Blackhole bh) {
+        UserFactSnapshot facts = snapshots[nextIndex(snapshots.length)];
+        for (CompiledRule rule : fixture.compiledRules) {
+            bh.consume(evaluator.evaluate(rule, facts));
+        }
+    }
+
+    @Benchmark
+    public void dynamicRuleSetEvaluate(Blackhole bh) {
+        UserFactSnapshot facts = snapshots[nextIndex(snapshots.length)];
+        byte[] memo = ruleSet.newMemo();
+        for (int i = 0; i < ruleSet.size(); i++) {
+            bh.consume(evaluator.evaluate(ruleSet, i, facts, memo));
+        }
+    }
+
+    @Benchmark
+    public List<RecommendationDTO> engineRecommendFromSnapshot() {
+        return engine.recommend(snapshots[nextIndex(snapshots.length)]);
+    }
+
+    @Benchmark
+    public List<RecommendationDTO> serviceGetRecommendationsForUser() {
+        return service.getRecommendationsForUser(userIdStrings[nextIndex(userIdStrings.length)]);
+    }
+
+    @Benchmark
+    public UserFactSnapshot repositoryLoadFacts() {
+        return repository.loadFacts(userIds[nextIndex(userIds.length)]);
+    }
+
+    @Benchmark
+    public DynamicRule ruleMapperToEntity() {
+        return RuleMapper.toEntity(fixture.ruleRequests.get(nextIndex(fixture.ruleRequests.size())));
+    }
+
+    @Benchmark
+    public RuleResponse ruleMapperToResponse() {
+        return RuleMapper.toResponse(fixture.ruleEntities.get(nextIndex(fixture.ruleEntities.size())));
+    }
+}
@@ -0,0 +1,175 @@
+package ru.projectteamwork.finance_recommendations.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.h2.jdbcx.JdbcDataSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.projectteamwork.finance_recommendations.api.QueryItem;
+import ru.projectteamwork.finance_recommendations.api.RuleRequest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Генерирует БД транзакций со схемой users / products / transactions и набор динамических правил.
+ * Распределения скошенные: число транзакций на пользователя и популярность продуктов следуют закону Ципфа,
+ * суммы — логнормальному распределению.
+ * <p>
+ * Шаг load.step=data создаёт БД (приложение с этой БД должно быть остановлено), шаг rules создаёт правила
+ * через POST /rule запущенного приложения, all выполняет оба шага. Параметры: load.db-url, load.users,
+ * load.products, load.transactions, load.skew, load.rules, load.base-url, load.user-ids-file, load.seed.
+ */
+public final class SyntheticDataGenerator {
+
+    private static final String[] FIRST_NAMES = {"Иван", "Пётр", "Анна", "Мария", "Алексей", "Ольга", "Дмитрий",
+            "Елена", "Сергей", "Наталья", "Андрей", "Татьяна", "Михаил", "Ирина", "Николай", "Светлана"};
+    private static final String[] LAST_NAMES = {"Иванов", "Петров", "Смирнов", "Кузнецов", "Попов", "Васильев",
+            "Соколов", "Михайлов", "Новиков", "Фёдоров", "Морозов", "Волков", "Алексеев", "Лебедев", "Семёнов"};
+    private static final int BATCH_SIZE = 10_000;
+
+    private SyntheticDataGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String step = System.getProperty("load.step", "all");
+        String dbUrl = System.getProperty("load.db-url", "jdbc:h2:file:./target/load/transaction");
+        int users = Integer.getInteger("load.users", 100_000);
+        int products = Integer.getInteger("load.products", 20);
+        long transactions = Long.getLong("load.transactions", 2_000_000L);
+        double skew = Double.parseDouble(System.getProperty("load.skew", "1.1"));
+        int rules = Integer.getInteger("load.rules", 100);
+        String baseUrl = System.getProperty("load.base-url", "http://localhost:8080");
+        Path userIdsFile = Path.of(System.getProperty("load.user-ids-file", "target/load/user-ids.txt"));
+        Random random = new Random(Long.getLong("load.seed", 42L));
+
+        if (step.equals("data") || step.equals("all")) {
+            generateData(dbUrl, users, products, transactions, skew, userIdsFile, random);
+        }
+        if (step.equals("rules") || step.equals("all")) {
+            generateRules(baseUrl, rules, random);
+        }
+    }
+
+    private static void generateData(String dbUrl, int users, int products, long transactions, double skew,
+                                     Path userIdsFile, Random random) throws IOException {
+        long started = System.nanoTime();
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL(dbUrl);
+        dataSource.setUser("");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("DROP TABLE IF EXISTS transactions");
+        jdbc.execute("DROP TABLE IF EXISTS products");
+        jdbc.execute("DROP TABLE IF EXISTS users");
+        jdbc.execute("CREATE TABLE users (id UUID PRIMARY KEY, registration_date TIMESTAMP, username VARCHAR(255), " +
+                "first_name VARCHAR(255), last_name VARCHAR(255))");
+        jdbc.execute("CREATE TABLE products (id UUID PRIMARY KEY, type VARCHAR(255), name VARCHAR(255))");
+        jdbc.execute("CREATE TABLE transactions (id UUID PRIMARY KEY, product_id UUID, user_id UUID, " +
+                "type VARCHAR(255), amount INT)");
+
+        UUID[] productIds = new UUID[products];
+        List<Object[]> batch = new ArrayList<>();
+        for (int p = 0; p < products; p++) {
+            productIds[p] = UUID.randomUUID();
+            String type = BenchmarkFixture.PRODUCT_TYPES[p % BenchmarkFixture.PRODUCT_TYPES.length];
+            batch.add(new Object[]{productIds[p], type, type + " " + p});
+        }
+        jdbc.batchUpdate("INSERT INTO products (id, type, name) VALUES (?, ?, ?)", batch);
+        batch.clear();
+
+        UUID[] userIds = new UUID[users];
+        Instant now = Instant.now();
+        for (int u = 0; u < users; u++) {
+            userIds[u] = UUID.randomUUID();
+            batch.add(new Object[]{
+                    userIds[u],
+                    Timestamp.from(now.minus(random.nextInt(3650), ChronoUnit.DAYS)),
+                    "user" + u,
+                    FIRST_NAMES[random.nextInt(FIRST_NAMES.length)],
+                    LAST_NAMES[random.nextInt(LAST_NAMES.length)]
+            });
+            if (batch.size() >= BATCH_SIZE) {
+                flush(jdbc, "INSERT INTO users (id, registration_date, username, first_name, last_name) " +
+                        "VALUES (?, ?, ?, ?, ?)", batch);
+            }
+        }
+        flush(jdbc, "INSERT INTO users (id, registration_date, username, first_name, last_name) " +
+                "VALUES (?, ?, ?, ?, ?)", batch);
+
+        // id случайны, поэтому «тяжёлые» пользователи с малым рангом разбросаны по всему диапазону id
+        ZipfSampler userSampler = new ZipfSampler(users, skew);
+        ZipfSampler productSampler = new ZipfSampler(products, skew);
+        for (long t = 0; t < transactions; t++) {
+            boolean deposit = random.nextDouble() < 0.6;
+            long amount = Math.round(Math.exp(Math.log(5_000) + 1.2 * random.nextGaussian()));
+            batch.add(new Object[]{
+                    UUID.randomUUID(),
+                    productIds[productSampler.sample(random.nextDouble())],
+                    userIds[userSampler.sample(random.nextDouble())],
+                    deposit ? "DEPOSIT" : "WITHDRAW",
+                    (int) Math.min(Integer.MAX_VALUE, Math.max(1, amount))
+            });
+            if (batch.size() >= BATCH_SIZE) {
+                flush(jdbc, "INSERT INTO transactions (id, product_id, user_id, type, amount) VALUES (?, ?, ?, ?, ?)",
+                        batch);
+            }
+        }
+        flush(jdbc, "INSERT INTO transactions (id, product_id, user_id, type, amount) VALUES (?, ?, ?, ?, ?)", batch);
+        jdbc.execute("CREATE INDEX idx_transactions_user ON transactions (user_id)");
+        jdbc.execute("SHUTDOWN COMPACT");
+
+        Files.createDirectories(userIdsFile.toAbsolutePath().getParent());
+        List<String> lines = new ArrayList<>(users);
+        for (UUID userId : userIds) {
+            lines.add(userId.toString());
+        }
+        Files.write(userIdsFile, lines);
+        System.out.printf("БД транзакций создана: %s, пользователей=%d, продуктов=%d, транзакций=%d, %d с%n",
+                dbUrl, users, products, transactions, Duration.ofNanos(System.nanoTime() - started).toSeconds());
+        System.out.printf("Список пользователей: %s%n", userIdsFile.toAbsolutePath());
+    }
+
+    private static void flush(JdbcTemplate jdbc, String sql, List<Object[]> batch) {
+        if (!batch.isEmpty()) {
+            jdbc.batchUpdate(sql, batch);
+            batch.clear();
+        }
+    }
+
+    private static void generateRules(String baseUrl, int rules, Random random) throws IOException, InterruptedException {
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        ObjectMapper objectMapper = new ObjectMapper();
+        int created = 0;
+        for (int r = 0; r < rules; r++) {
+            List<QueryItem> items = new ArrayList<>();
+            int size = 1 + random.nextInt(4);
+            for (int q = 0; q < size; q++) {
+                items.add(BenchmarkFixture.randomQuery(random));
+            }
+            RuleRequest rule = new RuleRequest("Нагрузочный продукт " + r, UUID.randomUUID(),
+                    "Текст нагрузочного продукта " + r, items);
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/rule"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(rule)))
+                    .build();
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() / 100 == 2) {
+                created++;
+            } else {
+                System.err.printf("Правило %d не создано: HTTP %d %s%n", r, response.statusCode(), response.body());
+            }
+        }
+        System.out.printf("Создано правил: %d из %d через %s/rule%n", created, rules, baseUrl);
+    }
+}
@@ -0,0 +1,36 @@
+package ru.projectteamwork.finance_recommendations.benchmark;
+
+import java.util.Arrays;
+
+/**
+ * Выбор индекса из [0, n) по закону Ципфа: вероятность ранга k пропорциональна 1 / (k + 1)^s.
+ * При s = 0 распределение равномерное. Функция распределения считается заранее, выбор — бинарным поиском.
+ */
+final class ZipfSampler {
+
+    private final double[] cdf;
+
+    ZipfSampler(int n, double exponent) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("Размер распределения должен быть положительным: " + n);
+        }
+        cdf = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1.0 / Math.pow(k + 1, exponent);
+            cdf[k] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            cdf[k] /= sum;
+        }
+    }
+
+    /**
+     * @param uniform случайное число из [0, 1)
+     */
+    int sample(double uniform) {
+        int index = Arrays.binarySearch(cdf, uniform);
+        index = index >= 0 ? index : -index - 1;
+        return Math.min(index, cdf.length - 1);
+    }
+}
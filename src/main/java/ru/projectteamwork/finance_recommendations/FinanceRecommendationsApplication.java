@@ -2,8 +2,10 @@ package ru.projectteamwork.finance_recommendations;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class FinanceRecommendationsApplication {
 
     public static void main(String[] args) {
@@ -1,10 +1,22 @@
 package ru.projectteamwork.finance_recommendations.api;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.projectteamwork.finance_recommendations.domain.service.RuleService;
+import ru.projectteamwork.finance_recommendations.evaluator.CompiledRule;
 
-import java.util.HashMap;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -12,9 +24,18 @@ import java.util.UUID;
 public class RuleController {
 
     private final RuleService ruleService;
+    private final ObjectMapper objectMapper;
+    private final int maxPageSize;
+    private final int simulationSampleSize;
 
-    public RuleController(RuleService ruleService) {
+    public RuleController(RuleService ruleService,
+                          ObjectMapper objectMapper,
+                          @Value("${rule-api.max-page-size:1000}") int maxPageSize,
+                          @Value("${rule-api.simulation-sample-size:20}") int simulationSampleSize) {
         this.ruleService = ruleService;
+        this.objectMapper = objectMapper;
+        this.maxPageSize = maxPageSize;
+        this.simulationSampleSize = simulationSampleSize;
     }
 
     @PostMapping("/rule")
@@ -22,11 +43,72 @@ public class RuleController {
         return ResponseEntity.ok(ruleService.create(request));
     }
 
+    /**
+     * Сколько пользователей подошло бы под правило сейчас и пример их id; правило не сохраняется.
+     * Правило, не прошедшее проверку, возвращает 400 с причиной.
+     */
+    @PostMapping("/rule/simulate")
+    public ResponseEntity<RuleSimulationResponse> simulate(@RequestBody RuleRequest request) {
+        return ResponseEntity.ok(ruleService.simulate(request, simulationSampleSize));
+    }
+
+    /**
+     * Правила по возрастанию id; без limit возвращаются все.
+     * Если страница заполнена, в ответе есть next_cursor для запроса следующей.
+     */
     @GetMapping("/rule")
-    public ResponseEntity<Map<String, Object>> list() {
-        Map<String, Object> body = new HashMap<>();
-        body.put("data", ruleService.list());
-        return ResponseEntity.ok(body);
+    public ResponseEntity<StreamingResponseBody> list(@RequestParam(required = false) UUID cursor,
+                                                      @RequestParam(required = false) Integer limit) {
+        Integer pageSize = limit != null ? Math.max(1, Math.min(limit, maxPageSize)) : null;
+        List<RuleResponse> page = ruleService.list(cursor, pageSize);
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator json = objectMapper.createGenerator(out)) {
+                json.writeStartObject();
+                json.writeArrayFieldStart("data");
+                for (RuleResponse rule : page) {
+                    json.writeObject(rule);
+                }
+                json.writeEndArray();
+                if (pageSize != null && page.size() == pageSize) {
+                    json.writeStringField("next_cursor", page.get(page.size() - 1).id().toString());
+                }
+                json.writeEndObject();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    /**
+     * CSV со всеми пользователями, которым сейчас подходит хотя бы одно правило продукта.
+     * Строки отдаются по мере вычисления, поэтому ответ начинается до окончания прохода по БД транзакций.
+     */
+    @GetMapping("/rule/{productId}/audience")
+    public ResponseEntity<StreamingResponseBody> audience(@PathVariable UUID productId) {
+        List<CompiledRule> rules = ruleService.findCompiledByProductId(productId);
+        if (rules.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        StreamingResponseBody body = out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            writer.write("user_id\n");
+            try {
+                ruleService.forEachAudienceUser(rules, userId -> {
+                    try {
+                        writer.write(userId.toString());
+                        writer.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            writer.flush();
+        };
+        return ResponseEntity.ok()
+                .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .header("Content-Disposition", "attachment; filename=\"audience-" + productId + ".csv\"")
+                .body(body);
     }
 
     @DeleteMapping("/rule/{productId}")
@@ -34,4 +116,13 @@ public class RuleController {
         ruleService.deleteByProductId(productId);
         return ResponseEntity.noContent().build();
     }
-}
\ No newline at end of file
+
+    /**
+     * Правило не прошло проверку компилятором (тип запроса, оператор, константа, число аргументов):
+     * это ошибка клиента, в ответе — причина.
+     */
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> invalidRule(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(Map.of("error", String.valueOf(e.getMessage())));
+    }
+}
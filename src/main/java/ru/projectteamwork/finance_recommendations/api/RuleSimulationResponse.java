@@ -0,0 +1,10 @@
+package ru.projectteamwork.finance_recommendations.api;
+
+import java.util.List;
+import java.util.UUID;
+
+public record RuleSimulationResponse(
+        long matched_users,
+        List<UUID> sample_user_ids,
+        long time_ms
+) {}
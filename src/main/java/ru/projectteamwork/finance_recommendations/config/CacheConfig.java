@@ -1,20 +1,55 @@
 package ru.projectteamwork.finance_recommendations.config;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cache.CacheManager;
-import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.support.SimpleCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 @Configuration
+@EnableConfigurationProperties(CacheSpecProperties.class)
 public class CacheConfig {
+    public static final List<String> CACHE_NAMES = List.of(
+            "recommendationsCache",
+            "userFactsCache"
+    );
+
+    private final Logger logger = LoggerFactory.getLogger(CacheConfig.class);
+
     @Bean
-    public CacheManager cacheManager() {
-        return new ConcurrentMapCacheManager(
-                "recommendationsCache",
-                "ruleCache",
-                "ruleStatCache",
-                "ruleEvaluationCache",
-                "userIdCache"
-        );
+    public CacheManager cacheManager(CacheSpecProperties properties) {
+        SimpleCacheManager cacheManager = new SimpleCacheManager();
+        cacheManager.setCaches(CACHE_NAMES.stream()
+                .map(name -> buildCache(name, properties.specFor(name)))
+                .toList());
+        return cacheManager;
+    }
+
+    private CaffeineCache buildCache(String name, String spec) {
+        Caffeine<Object, Object> builder = Caffeine.from(spec);
+        if (spec.contains("maximumWeight")) {
+            builder = builder.weigher(CacheConfig::weigh);
+        }
+        logger.info("Кеш {} создан с настройками {}", name, spec);
+        return new CaffeineCache(name, builder.build());
+    }
+
+    // Коллекции и словари весят по числу элементов, остальные значения — единицу
+    private static int weigh(Object key, Object value) {
+        if (value instanceof Collection<?> collection) {
+            return collection.size() + 1;
+        }
+        if (value instanceof Map<?, ?> map) {
+            return map.size() + 1;
+        }
+        return 1;
     }
 }
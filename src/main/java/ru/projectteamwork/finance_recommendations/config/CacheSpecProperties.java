@@ -0,0 +1,24 @@
+package ru.projectteamwork.finance_recommendations.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.Map;
+
+/**
+ * Настройки именованных кешей в формате CaffeineSpec,
+ * например {@code maximumSize=10000,expireAfterWrite=10m,recordStats}.
+ */
+@ConfigurationProperties(prefix = "caches")
+public record CacheSpecProperties(String defaultSpec, Map<String, String> spec) {
+
+    public CacheSpecProperties {
+        if (defaultSpec == null || defaultSpec.isBlank()) {
+            defaultSpec = "maximumSize=10000,expireAfterWrite=10m,recordStats";
+        }
+        spec = spec != null ? Map.copyOf(spec) : Map.of();
+    }
+
+    public String specFor(String cacheName) {
+        return spec.getOrDefault(cacheName, defaultSpec);
+    }
+}
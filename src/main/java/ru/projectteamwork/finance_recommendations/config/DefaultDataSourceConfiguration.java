@@ -1,10 +1,12 @@
 package ru.projectteamwork.finance_recommendations.config;
 
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
 
 import javax.sql.DataSource;
 
@@ -17,4 +19,10 @@ public class DefaultDataSourceConfiguration {
     public DataSource defaultDataSource(DataSourceProperties properties) {
         return properties.initializeDataSourceBuilder().build();
     }
-}
\ No newline at end of file
+
+    @Primary
+    @Bean(name = "defaultJdbcTemplate")
+    public JdbcTemplate defaultJdbcTemplate(@Qualifier("defaultDataSource") DataSource dataSource) {
+        return new JdbcTemplate(dataSource);
+    }
+}
@@ -0,0 +1,70 @@
+package ru.projectteamwork.finance_recommendations.controller;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Адаптивный лимит одновременных запросов: аддитивное увеличение, мультипликативное уменьшение (AIMD).
+ * Лимит растёт примерно на единицу за каждые limit успешных запросов, пока он используется хотя бы наполовину,
+ * и умножается на backoffRatio при признаке перегрузки. Уменьшение происходит не чаще одного раза
+ * на «поколение» запросов: запросы, начатые до предыдущего уменьшения, его не повторяют.
+ */
+final class AimdConcurrencyLimit {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile double limit;
+    private long lastDecreaseNanos = System.nanoTime();
+
+    AimdConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Занимает место, если текущее число запросов меньше лимита.
+     */
+    boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Освобождает место и корректирует лимит по результату запроса.
+     *
+     * @param startedNanos момент начала запроса
+     * @param overloaded   запрос был медленным, завершился ошибкой или ждал соединение из пула
+     */
+    void release(long startedNanos, boolean overloaded) {
+        int current = inFlight.getAndDecrement();
+        synchronized (this) {
+            if (overloaded) {
+                if (startedNanos - lastDecreaseNanos > 0) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    lastDecreaseNanos = System.nanoTime();
+                }
+            } else if (current * 2 >= limit) {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+        }
+    }
+
+    int getLimit() {
+        return (int) limit;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+}
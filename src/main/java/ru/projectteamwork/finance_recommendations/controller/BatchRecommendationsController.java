@@ -0,0 +1,152 @@
+package ru.projectteamwork.finance_recommendations.controller;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import ru.projectteamwork.finance_recommendations.service.BatchRecommendationsService;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Пакетный расчёт: тело запроса — JSON-массив id пользователей, ответ — по строке NDJSON на каждый id.
+ * Массив читается потоково по мере обработки, а таймаут задаётся только для этого ответа
+ * (recommendations.batch.timeout-ms), не затрагивая остальные асинхронные запросы.
+ */
+@RestController
+@RequestMapping("/api")
+public class BatchRecommendationsController {
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    // строки копятся в буфере, чтобы не сбрасывать ответ клиенту после каждой из них
+    private static final int SEND_BYTES = 64 * 1024;
+
+    private final BatchRecommendationsService batchRecommendationsService;
+    private final ObjectMapper objectMapper;
+    private final AsyncTaskExecutor taskExecutor;
+    private final long timeoutMs;
+    private final Logger logger = LoggerFactory.getLogger(BatchRecommendationsController.class);
+
+    public BatchRecommendationsController(BatchRecommendationsService batchRecommendationsService,
+                                          ObjectMapper objectMapper,
+                                          @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+                                          AsyncTaskExecutor taskExecutor,
+                                          @Value("${recommendations.batch.timeout-ms:1800000}") long timeoutMs) {
+        this.batchRecommendationsService = batchRecommendationsService;
+        this.objectMapper = objectMapper;
+        this.taskExecutor = taskExecutor;
+        this.timeoutMs = timeoutMs;
+    }
+
+    @PostMapping("/recommendations/batch")
+    public ResponseEntity<ResponseBodyEmitter> getBatchRecommendations(HttpServletRequest request) throws IOException {
+        JsonParser parser = objectMapper.getFactory().createParser(request.getInputStream());
+        JsonToken first;
+        try {
+            first = parser.nextToken();
+        } catch (JsonProcessingException e) {
+            first = null;
+        }
+        if (first != JsonToken.START_ARRAY) {
+            parser.close();
+            return ResponseEntity.badRequest().build();
+        }
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(timeoutMs);
+        taskExecutor.execute(() -> stream(parser, emitter));
+        return ResponseEntity.ok().contentType(NDJSON).body(emitter);
+    }
+
+    private void stream(JsonParser parser, ResponseBodyEmitter emitter) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(SEND_BYTES * 2);
+        try (parser) {
+            batchRecommendationsService.streamRecommendations(new UserIdIterator(parser), response -> {
+                try {
+                    buffer.write(objectMapper.writeValueAsBytes(response));
+                    buffer.write('\n');
+                    if (buffer.size() >= SEND_BYTES) {
+                        emitter.send(buffer.toByteArray(), NDJSON);
+                        buffer.reset();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            if (buffer.size() > 0) {
+                emitter.send(buffer.toByteArray(), NDJSON);
+            }
+            emitter.complete();
+        } catch (IOException | RuntimeException e) {
+            // клиент отключился, истёк таймаут ответа или массив id оказался некорректным
+            logger.warn("Пакетный расчёт рекомендаций прерван: {}", e.toString());
+            emitter.completeWithError(e);
+        }
+    }
+
+    // пока ответ не начат, статус исключения становится статусом ответа; после — соединение обрывается
+    private static ResponseStatusException badRequest(String message) {
+        return new ResponseStatusException(HttpStatus.BAD_REQUEST, message);
+    }
+
+    /**
+     * Элементы JSON-массива как строки; null и числа передаются дальше и отсеиваются как некорректные id.
+     */
+    private static final class UserIdIterator implements Iterator<String> {
+        private final JsonParser parser;
+        private JsonToken next;
+
+        UserIdIterator(JsonParser parser) {
+            this.parser = parser;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = parser.nextToken();
+                } catch (JsonProcessingException e) {
+                    throw badRequest("Некорректный JSON в массиве id пользователей");
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (next == null) {
+                    throw badRequest("Массив id пользователей не закрыт");
+                }
+                if (next.isStructStart()) {
+                    throw badRequest("Ожидалась строка с id пользователя, получено: " + next);
+                }
+            }
+            return next != JsonToken.END_ARRAY;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            next = null;
+            try {
+                return parser.getValueAsString();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
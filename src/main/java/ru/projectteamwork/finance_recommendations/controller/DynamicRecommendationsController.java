@@ -3,13 +3,14 @@ package ru.projectteamwork.finance_recommendations.controller;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
-import ru.projectteamwork.finance_recommendations.dto.RecommendationDTO;
 import ru.projectteamwork.finance_recommendations.dto.RecommendationsResponse;
+import ru.projectteamwork.finance_recommendations.dto.RecommendationsResult;
 import ru.projectteamwork.finance_recommendations.service.RecommendationsService;
 
-import java.util.List;
+import java.time.Duration;
 
 @RestController
 @RequestMapping("api")
@@ -21,9 +22,14 @@ public class DynamicRecommendationsController {
     }
 
     @GetMapping("/recommendations/dynamic/{userId}")
-    public ResponseEntity<RecommendationsResponse> getDynamicRecommendations(@PathVariable String userId) {
-        List<RecommendationDTO> recommendations = recommendationsService.getRecommendationsForUser(userId);
-        RecommendationsResponse response = new RecommendationsResponse(userId, recommendations);
+    public ResponseEntity<RecommendationsResponse> getDynamicRecommendations(@PathVariable String userId,
+                                                                             @RequestHeader(name = RecommendationsController.DEADLINE_HEADER, required = false) Long deadlineMs) {
+        if (deadlineMs != null && deadlineMs <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        RecommendationsResult result = recommendationsService.getRecommendationsForUser(
+                userId, deadlineMs != null ? Duration.ofMillis(deadlineMs) : null);
+        RecommendationsResponse response = new RecommendationsResponse(userId, result);
         return ResponseEntity.ok(response);
     }
 
@@ -1,21 +1,75 @@
 package ru.projectteamwork.finance_recommendations.controller;
 
 
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.caffeine.CaffeineCache;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import ru.projectteamwork.finance_recommendations.evaluator.RulePlanOptimizer;
+import ru.projectteamwork.finance_recommendations.service.impl.RecommendationsPrecomputeJob;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("management")
 public class ManagementController {
 
-    @CacheEvict(cacheNames = {"recommendationsCache", "ruleCache", "ruleStatCache", "ruleEvaluationCache"}, allEntries = true)
+    private final CacheManager cacheManager;
+    private final RulePlanOptimizer rulePlanOptimizer;
+    private final ObjectProvider<RecommendationsPrecomputeJob> precomputeJob;
+
+    public ManagementController(CacheManager cacheManager,
+                                RulePlanOptimizer rulePlanOptimizer,
+                                ObjectProvider<RecommendationsPrecomputeJob> precomputeJob) {
+        this.cacheManager = cacheManager;
+        this.rulePlanOptimizer = rulePlanOptimizer;
+        this.precomputeJob = precomputeJob;
+    }
+
+    @CacheEvict(cacheNames = {"recommendationsCache", "userFactsCache"}, allEntries = true)
     @PostMapping("/clear-caches")
     public ResponseEntity<String> clearCaches() {
         // Этот метод ничего делать не должен, кроме вызова, аннотированного @CacheEvict
         return ResponseEntity.ok("Кеши успешно очищены");
     }
-}
 
+    @GetMapping("/cache-stats")
+    public Map<String, Object> cacheStats() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        for (String name : cacheManager.getCacheNames()) {
+            Cache cache = cacheManager.getCache(name);
+            if (cache instanceof CaffeineCache caffeineCache) {
+                com.github.benmanes.caffeine.cache.Cache<Object, Object> nativeCache = caffeineCache.getNativeCache();
+                CacheStats stats = nativeCache.stats();
+                Map<String, Object> cacheBody = new LinkedHashMap<>();
+                cacheBody.put("size", nativeCache.estimatedSize());
+                cacheBody.put("hit_count", stats.hitCount());
+                cacheBody.put("miss_count", stats.missCount());
+                cacheBody.put("hit_rate", stats.hitRate());
+                cacheBody.put("eviction_count", stats.evictionCount());
+                body.put(name, cacheBody);
+            }
+        }
+        return body;
+    }
+
+    @GetMapping("/rule-plan")
+    public List<Map<String, Object>> rulePlan() {
+        return rulePlanOptimizer.plan();
+    }
+
+    @GetMapping("/precompute")
+    public ResponseEntity<Map<String, Object>> precompute() {
+        RecommendationsPrecomputeJob job = precomputeJob.getIfAvailable();
+        return job != null ? ResponseEntity.ok(job.status()) : ResponseEntity.notFound().build();
+    }
+}
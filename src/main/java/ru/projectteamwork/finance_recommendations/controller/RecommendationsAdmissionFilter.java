@@ -0,0 +1,108 @@
+package ru.projectteamwork.finance_recommendations.controller;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ограничивает число одновременных GET-запросов к /api/recommendations/**.
+ * Лишние запросы сразу получают 503 с Retry-After, а не ждут соединение в пуле до таймаута.
+ * Лимит подстраивается {@link AimdConcurrencyLimit}: перегрузкой считается запрос дольше latency-threshold-ms,
+ * завершившийся ошибкой, или очередь за соединением в каком-либо пуле длиннее самого пула на момент его завершения
+ * (факты читаются как из БД транзакций, так и из агрегатов в БД правил). Короткая очередь к пулу перегрузкой
+ * не считается: при лимите больше размера пула она есть всегда, а её ожидание и так входит в задержку запроса.
+ * <p>
+ * Задержка считается от входа в фильтр: время в очереди Tomcat и на стороне клиента сюда не входит.
+ */
+@Component
+@ConditionalOnProperty(name = "recommendations.admission.enabled", havingValue = "true", matchIfMissing = true)
+public class RecommendationsAdmissionFilter extends OncePerRequestFilter {
+
+    private static final String PATH_PREFIX = "/api/recommendations/";
+
+    private final AimdConcurrencyLimit limit;
+    private final List<HikariDataSource> pools;
+    private final long latencyThresholdNanos;
+    private final String retryAfterSeconds;
+    private final Counter rejected;
+
+    public RecommendationsAdmissionFilter(List<DataSource> dataSources,
+                                          MeterRegistry meterRegistry,
+                                          @Value("${recommendations.admission.initial-limit:20}") int initialLimit,
+                                          @Value("${recommendations.admission.min-limit:2}") int minLimit,
+                                          @Value("${recommendations.admission.max-limit:200}") int maxLimit,
+                                          @Value("${recommendations.admission.backoff-ratio:0.9}") double backoffRatio,
+                                          @Value("${recommendations.admission.latency-threshold-ms:500}") long latencyThresholdMs,
+                                          @Value("${recommendations.admission.retry-after-s:1}") int retryAfterSeconds) {
+        this.limit = new AimdConcurrencyLimit(initialLimit, minLimit, maxLimit, backoffRatio);
+        this.pools = dataSources.stream()
+                .filter(HikariDataSource.class::isInstance)
+                .map(HikariDataSource.class::cast)
+                .toList();
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMs);
+        this.retryAfterSeconds = String.valueOf(retryAfterSeconds);
+        this.rejected = Counter.builder("recommendations.admission.rejected")
+                .description("Запросы рекомендаций, отклонённые с 503 из-за лимита одновременных запросов")
+                .register(meterRegistry);
+        Gauge.builder("recommendations.admission.limit", limit, AimdConcurrencyLimit::getLimit)
+                .description("Текущий лимит одновременных запросов рекомендаций")
+                .register(meterRegistry);
+        Gauge.builder("recommendations.admission.in-flight", limit, AimdConcurrencyLimit::getInFlight)
+                .description("Запросы рекомендаций, выполняющиеся сейчас")
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        // пакетный POST выполняется в собственном ограниченном пуле
+        return !"GET".equals(request.getMethod())
+                || !request.getRequestURI().startsWith(request.getContextPath() + PATH_PREFIX);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (!limit.tryAcquire()) {
+            rejected.increment();
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, retryAfterSeconds);
+            return;
+        }
+        long started = System.nanoTime();
+        boolean failed = true;
+        try {
+            chain.doFilter(request, response);
+            failed = response.getStatus() >= 500;
+        } finally {
+            boolean overloaded = failed || System.nanoTime() - started > latencyThresholdNanos || poolSaturated();
+            limit.release(started, overloaded);
+        }
+    }
+
+    private boolean poolSaturated() {
+        for (HikariDataSource dataSource : pools) {
+            HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+            if (pool != null && pool.getThreadsAwaitingConnection() > dataSource.getMaximumPoolSize()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
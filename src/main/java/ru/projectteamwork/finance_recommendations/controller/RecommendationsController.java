@@ -4,17 +4,26 @@ package ru.projectteamwork.finance_recommendations.controller;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
-import ru.projectteamwork.finance_recommendations.dto.RecommendationDTO;
+import ru.projectteamwork.finance_recommendations.dto.RecommendationTrace;
 import ru.projectteamwork.finance_recommendations.dto.RecommendationsResponse;
+import ru.projectteamwork.finance_recommendations.dto.RecommendationsResult;
 import ru.projectteamwork.finance_recommendations.service.RecommendationsService;
 
-import java.util.List;
+import java.time.Duration;
+import java.util.UUID;
 
 @RestController
 @RequestMapping("/api")
 public class RecommendationsController {
+    /**
+     * Сколько миллисекунд клиент готов ждать ответа; без заголовка действует recommendations.deadline.default-ms.
+     * Значение не больше нуля — ошибка клиента (400).
+     */
+    public static final String DEADLINE_HEADER = "X-Request-Deadline";
+
     private final RecommendationsService recommendationsService;
 
     public RecommendationsController(RecommendationsService recommendationsService) {
@@ -22,9 +31,25 @@ public class RecommendationsController {
     }
 
     @GetMapping("/recommendations/{userId}")
-    public ResponseEntity<RecommendationsResponse> getRecommendations(@PathVariable String userId) {
-        List<RecommendationDTO> recommendations = recommendationsService.getRecommendationsForUser(userId);
-        RecommendationsResponse response = new RecommendationsResponse(userId, recommendations);
+    public ResponseEntity<RecommendationsResponse> getRecommendations(@PathVariable String userId,
+                                                                      @RequestHeader(name = DEADLINE_HEADER, required = false) Long deadlineMs) {
+        if (deadlineMs != null && deadlineMs <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        RecommendationsResult result = recommendationsService.getRecommendationsForUser(
+                userId, deadlineMs != null ? Duration.ofMillis(deadlineMs) : null);
+        RecommendationsResponse response = new RecommendationsResponse(userId, result);
         return ResponseEntity.ok(response);
     }
+
+    @GetMapping("/recommendations/{userId}/explain")
+    public ResponseEntity<RecommendationTrace> explain(@PathVariable String userId) {
+        UUID userUUID;
+        try {
+            userUUID = UUID.fromString(userId);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(recommendationsService.explain(userUUID));
+    }
 }
@@ -1,44 +1,74 @@
 package ru.projectteamwork.finance_recommendations.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import ru.projectteamwork.finance_recommendations.domain.DynamicRule;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.projectteamwork.finance_recommendations.domain.service.RuleStatService;
-import ru.projectteamwork.finance_recommendations.repository.DynamicRuleStatRepository;
-import ru.projectteamwork.finance_recommendations.domain.service.RuleService;
-import java.util.*;
-import java.util.stream.Collectors;
+import ru.projectteamwork.finance_recommendations.repository.RuleStatQueryRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.UUID;
 
 @RestController
 @RequestMapping("/rule")
 public class RuleStatsController {
 
-    private final DynamicRuleStatRepository statRepository;
+    private final RuleStatQueryRepository statQueryRepository;
     private final RuleStatService ruleStatService;
-    private final RuleService ruleService;
+    private final ObjectMapper objectMapper;
+    private final int maxPageSize;
 
-    public RuleStatsController(DynamicRuleStatRepository statRepository, RuleService ruleService, RuleStatService  ruleStatService) {
-        this.statRepository = statRepository;
-        this.ruleService = ruleService;
+    public RuleStatsController(RuleStatQueryRepository statQueryRepository,
+                               RuleStatService ruleStatService,
+                               ObjectMapper objectMapper,
+                               @Value("${rule-api.max-page-size:1000}") int maxPageSize) {
+        this.statQueryRepository = statQueryRepository;
         this.ruleStatService = ruleStatService;
-
+        this.objectMapper = objectMapper;
+        this.maxPageSize = maxPageSize;
     }
 
+    /**
+     * Счётчики срабатываний одним запросом; без limit возвращаются все правила.
+     * Если страница заполнена, в ответе есть next_cursor для запроса следующей.
+     */
     @GetMapping("/stats")
-    public Map<String, Object> getStats() {
-        List<DynamicRule> allRules = ruleService.findAllEntities();
-
-        List<Map<String, Object>> stats = allRules.stream()
-                .map(rule -> {
-                    Long fireCount = ruleStatService.getFireCount(rule.getId());
-                    return Map.<String, Object>of(
-                            "rule_id", rule.getId().toString(),
-                            "count", fireCount
-                    );
-                })
-                .collect(Collectors.toList());
-
-        return Map.of("stats", stats);
+    public ResponseEntity<StreamingResponseBody> getStats(@RequestParam(required = false) UUID cursor,
+                                                          @RequestParam(required = false) Integer limit) {
+        Integer pageSize = limit != null ? Math.max(1, Math.min(limit, maxPageSize)) : null;
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator json = objectMapper.createGenerator(out)) {
+                json.writeStartObject();
+                json.writeArrayFieldStart("stats");
+                UUID[] last = new UUID[1];
+                int[] written = new int[1];
+                statQueryRepository.forEachFireCount(cursor, pageSize, (ruleId, fireCount) -> {
+                    try {
+                        json.writeStartObject();
+                        json.writeStringField("rule_id", ruleId.toString());
+                        json.writeNumberField("count", fireCount + ruleStatService.getPendingFireCount(ruleId));
+                        json.writeEndObject();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    last[0] = ruleId;
+                    written[0]++;
+                });
+                json.writeEndArray();
+                if (pageSize != null && written[0] == pageSize) {
+                    json.writeStringField("next_cursor", last[0].toString());
+                }
+                json.writeEndObject();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
     }
 }
@@ -0,0 +1,264 @@
+package ru.projectteamwork.finance_recommendations.domain.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.projectteamwork.finance_recommendations.api.RuleResponse;
+import ru.projectteamwork.finance_recommendations.domain.DynamicRule;
+import ru.projectteamwork.finance_recommendations.domain.repo.DynamicRuleRepository;
+import ru.projectteamwork.finance_recommendations.evaluator.CompiledRule;
+import ru.projectteamwork.finance_recommendations.evaluator.CompiledRuleSet;
+import ru.projectteamwork.finance_recommendations.evaluator.RuleCompiler;
+import ru.projectteamwork.finance_recommendations.rules.BuiltInRules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Реестр правил в памяти: встроенные правила из {@link BuiltInRules} и динамические правила из БД.
+ * Хранит неизменяемый снимок всех правил с номером версии (эпохой); при создании или удалении
+ * правила после фиксации транзакции публикуется новый снимок заменой ссылки.
+ * Читатели получают снимок без блокировок, а о каждой новой версии сообщает событие {@link RulesPublished}.
+ */
+@Component
+public class RuleRegistry {
+
+    private final Logger logger = LoggerFactory.getLogger(RuleRegistry.class);
+
+    private final DynamicRuleRepository repo;
+    private final BuiltInRules builtInRules;
+    private final TransactionTemplate readOnlyTx;
+    private final ApplicationEventPublisher events;
+
+    private volatile RuleSnapshot snapshot;
+
+    public RuleRegistry(DynamicRuleRepository repo, BuiltInRules builtInRules, PlatformTransactionManager transactionManager,
+                        ApplicationEventPublisher events) {
+        this.repo = repo;
+        this.builtInRules = builtInRules;
+        this.events = events;
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        this.readOnlyTx = template;
+        this.snapshot = new RuleSnapshot(0, builtInRules, List.of(), List.of(), List.of());
+    }
+
+    public RuleSnapshot current() {
+        return snapshot;
+    }
+
+    public long currentEpoch() {
+        return snapshot.epoch();
+    }
+
+    @PostConstruct
+    public void init() {
+        reload();
+    }
+
+    /**
+     * Полная перезагрузка из БД на случай изменений, сделанных другим экземпляром приложения.
+     * Новая эпоха публикуется только если набор правил действительно изменился.
+     */
+    @Scheduled(fixedDelayString = "${rule-registry.refresh-interval-ms:60000}",
+            initialDelayString = "${rule-registry.refresh-interval-ms:60000}")
+    public synchronized void reload() {
+        try {
+            RuleSnapshot loaded = readOnlyTx.execute(status -> {
+                List<DynamicRule> stored = repo.findAll();
+                List<DynamicRule> rules = new ArrayList<>(stored.size());
+                List<RuleResponse> responses = new ArrayList<>(stored.size());
+                List<CompiledRule> compiled = new ArrayList<>(stored.size());
+                for (DynamicRule rule : stored) {
+                    // правила, сохранённые до проверки при создании, могут не компилироваться:
+                    // такое правило пропускается, чтобы не остановить запуск и остальные правила
+                    CompiledRule plan;
+                    try {
+                        plan = RuleCompiler.compile(rule);
+                    } catch (RuntimeException e) {
+                        logger.warn("Правило {} продукта {} пропущено: {}", rule.getId(), rule.getProductId(),
+                                e.getMessage());
+                        continue;
+                    }
+                    rules.add(rule);
+                    responses.add(RuleMapper.toResponse(rule));
+                    compiled.add(plan);
+                }
+                return new RuleSnapshot(snapshot.epoch() + 1, builtInRules, rules, responses, compiled);
+            });
+            if (loaded != null && !ruleIds(loaded.rules()).equals(ruleIds(snapshot.rules()))) {
+                publish(loaded);
+            }
+        } catch (DataAccessException e) {
+            logger.error("Не удалось перечитать правила, используется версия {}", snapshot.epoch(), e);
+        }
+    }
+
+    @TransactionalEventListener
+    public synchronized void onRuleCreated(RuleCreated event) {
+        RuleSnapshot current = snapshot;
+        // reload() мог успеть прочитать правило из БД раньше, чем пришло событие
+        for (DynamicRule rule : current.rules()) {
+            if (rule.getId().equals(event.rule().getId())) {
+                return;
+            }
+        }
+        List<DynamicRule> rules = new ArrayList<>(current.rules());
+        List<RuleResponse> responses = new ArrayList<>(current.responses());
+        List<CompiledRule> compiled = new ArrayList<>(current.dynamicCompiled());
+        rules.add(event.rule());
+        responses.add(event.response());
+        compiled.add(event.compiled());
+        publish(new RuleSnapshot(current.epoch() + 1, builtInRules, rules, responses, compiled));
+    }
+
+    @TransactionalEventListener
+    public synchronized void onRulesDeleted(RulesDeleted event) {
+        RuleSnapshot current = snapshot;
+        List<DynamicRule> rules = new ArrayList<>(current.rules().size());
+        List<RuleResponse> responses = new ArrayList<>(current.responses().size());
+        List<CompiledRule> compiled = new ArrayList<>(current.compiled().size());
+        for (int i = 0; i < current.rules().size(); i++) {
+            if (!event.productId().equals(current.rules().get(i).getProductId())) {
+                rules.add(current.rules().get(i));
+                responses.add(current.responses().get(i));
+                compiled.add(current.dynamicCompiled().get(i));
+            }
+        }
+        if (rules.size() != current.rules().size()) {
+            publish(new RuleSnapshot(current.epoch() + 1, builtInRules, rules, responses, compiled));
+        }
+    }
+
+    private void publish(RuleSnapshot next) {
+        snapshot = next;
+        logger.info("Опубликована версия правил {}: {} правил", next.epoch(), next.rules().size());
+        events.publishEvent(new RulesPublished(next));
+    }
+
+    private static Set<UUID> ruleIds(List<DynamicRule> rules) {
+        Set<UUID> ids = new HashSet<>(rules.size() * 2);
+        for (DynamicRule rule : rules) {
+            ids.add(rule.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Неизменяемый снимок динамических правил, упорядоченный по id правила. Списки выровнены по индексу:
+     * i-е правило, его представление для API и скомпилированная форма ({@link #dynamicCompiled()}).
+     * Набор compiled начинается со встроенных правил, за ними идут динамические.
+     */
+    public record RuleSnapshot(long epoch,
+                               List<DynamicRule> rules,
+                               List<RuleResponse> responses,
+                               CompiledRuleSet compiled,
+                               long fingerprint) {
+
+        // беззнаковое сравнение, как ORDER BY по UUID в БД (UUID.compareTo сравнивает со знаком)
+        private static final Comparator<UUID> ID_ORDER = Comparator
+                .comparing(UUID::getMostSignificantBits, Long::compareUnsigned)
+                .thenComparing(UUID::getLeastSignificantBits, Long::compareUnsigned);
+
+        RuleSnapshot(long epoch, BuiltInRules builtIn, List<DynamicRule> rules, List<RuleResponse> responses,
+                     List<CompiledRule> compiled) {
+            this(epoch, sortedById(rules, rules), sortedById(rules, responses),
+                    new CompiledRuleSet(concat(builtIn.compiled(), sortedById(rules, compiled))),
+                    fingerprint(rules) * 31 + builtIn.fingerprint());
+        }
+
+        /**
+         * Скомпилированные динамические правила, выровненные по индексу с {@link #rules()}.
+         */
+        public List<CompiledRule> dynamicCompiled() {
+            List<CompiledRule> all = compiled.rules();
+            return all.subList(all.size() - rules.size(), all.size());
+        }
+
+        /**
+         * Индекс первого правила с id больше курсора; 0, если курсор не задан.
+         */
+        public int indexAfter(UUID cursor) {
+            if (cursor == null) {
+                return 0;
+            }
+            int low = 0;
+            int high = rules.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (ID_ORDER.compare(rules.get(mid).getId(), cursor) <= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Хеш набора id динамических правил. В отличие от эпохи, не зависит от перезапуска приложения:
+         * правила не изменяются, а только создаются и удаляются, поэтому одинаковый набор id — одинаковые правила.
+         * Сумма перемешанных id не зависит от порядка правил. К нему добавляется хеш описаний встроенных правил.
+         */
+        private static long fingerprint(List<DynamicRule> rules) {
+            long hash = rules.size();
+            for (DynamicRule rule : rules) {
+                long h = rule.getId().getMostSignificantBits() * 31 + rule.getId().getLeastSignificantBits();
+                h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+                h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+                hash += h ^ (h >>> 31);
+            }
+            return hash;
+        }
+
+        private static List<CompiledRule> concat(List<CompiledRule> first, List<CompiledRule> second) {
+            List<CompiledRule> all = new ArrayList<>(first.size() + second.size());
+            all.addAll(first);
+            all.addAll(second);
+            return all;
+        }
+
+        private static <T> List<T> sortedById(List<DynamicRule> rules, List<T> values) {
+            Integer[] order = new Integer[rules.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> ID_ORDER.compare(rules.get(a).getId(), rules.get(b).getId()));
+            List<T> sorted = new ArrayList<>(values.size());
+            for (Integer i : order) {
+                sorted.add(values.get(i));
+            }
+            return List.copyOf(sorted);
+        }
+    }
+
+    /**
+     * Правило сохранено; применяется к реестру после фиксации транзакции.
+     */
+    public record RuleCreated(DynamicRule rule, RuleResponse response, CompiledRule compiled) {
+    }
+
+    /**
+     * Правила продукта удалены; применяется к реестру после фиксации транзакции.
+     */
+    public record RulesDeleted(UUID productId) {
+    }
+
+    /**
+     * Опубликован новый снимок правил.
+     */
+    public record RulesPublished(RuleSnapshot snapshot) {
+    }
+}
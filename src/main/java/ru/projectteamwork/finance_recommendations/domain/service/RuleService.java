@@ -1,49 +1,122 @@
 package ru.projectteamwork.finance_recommendations.domain.service;
 
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import ru.projectteamwork.finance_recommendations.api.RuleRequest;
+import ru.projectteamwork.finance_recommendations.api.QueryItem;
 import ru.projectteamwork.finance_recommendations.api.RuleResponse;
+import ru.projectteamwork.finance_recommendations.api.RuleSimulationResponse;
 import ru.projectteamwork.finance_recommendations.domain.DynamicRule;
 import ru.projectteamwork.finance_recommendations.domain.repo.DynamicRuleRepository;
+import ru.projectteamwork.finance_recommendations.evaluator.CompiledRule;
+import ru.projectteamwork.finance_recommendations.evaluator.CompiledRuleSet;
+import ru.projectteamwork.finance_recommendations.evaluator.DynamicRuleEvaluator;
+import ru.projectteamwork.finance_recommendations.evaluator.FactPredicate;
+import ru.projectteamwork.finance_recommendations.evaluator.RuleCompiler;
+import ru.projectteamwork.finance_recommendations.repository.RuleAudienceRepository;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 @Service
 public class RuleService {
 
     private final DynamicRuleRepository repo;
+    private final RuleRegistry registry;
+    private final ApplicationEventPublisher events;
+    private final RuleAudienceRepository audienceRepository;
+    private final DynamicRuleEvaluator evaluator = new DynamicRuleEvaluator();
 
-    public RuleService(DynamicRuleRepository repo) {
+    public RuleService(DynamicRuleRepository repo, RuleRegistry registry, ApplicationEventPublisher events,
+                       RuleAudienceRepository audienceRepository) {
         this.repo = repo;
+        this.registry = registry;
+        this.events = events;
+        this.audienceRepository = audienceRepository;
     }
 
     @Transactional
-    @Cacheable(cacheNames = "ruleCache", key = "#req")
     public RuleResponse create(RuleRequest req) {
-        DynamicRule saved = repo.save(RuleMapper.toEntity(req));
-        return RuleMapper.toResponse(saved);
+        DynamicRule entity = RuleMapper.toEntity(req);
+        RuleCompiler.compile(entity);
+        DynamicRule saved = repo.save(entity);
+        RuleResponse response = RuleMapper.toResponse(saved);
+        CompiledRule compiled = RuleCompiler.compile(saved);
+        events.publishEvent(new RuleRegistry.RuleCreated(saved, response, compiled));
+        return response;
     }
 
-    @Transactional(readOnly = true)
-    @Cacheable(cacheNames = "ruleCache", key = "'list'")
-    public List<RuleResponse> list() {
-        return repo.findAll().stream().map(RuleMapper::toResponse).collect(Collectors.toList());
+    /**
+     * Аудитория правила-кандидата по всей БД транзакций; правило не сохраняется.
+     * Условия проверяются так же, как при создании правила.
+     */
+    public RuleSimulationResponse simulate(RuleRequest req, int sampleSize) {
+        List<QueryItem> items = req.rule() != null ? req.rule() : List.of();
+        List<FactPredicate> predicates = new ArrayList<>(items.size());
+        List<Boolean> negated = new ArrayList<>(items.size());
+        for (QueryItem item : items) {
+            predicates.add(RuleCompiler.compilePredicate(item.query(), item.arguments()));
+            negated.add(item.negate());
+        }
+        CompiledRule rule = new CompiledRule(null, req.product_id(), null, predicates, negated);
+        long started = System.nanoTime();
+        RuleAudienceRepository.Audience audience = audienceRepository.simulate(rule, sampleSize);
+        return new RuleSimulationResponse(audience.users(), audience.sample(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /**
+     * Текущие правила продукта; пустой список, если правил нет.
+     */
+    public List<CompiledRule> findCompiledByProductId(UUID productId) {
+        List<CompiledRule> rules = new ArrayList<>();
+        for (CompiledRule rule : registry.current().compiled().rules()) {
+            if (rule.getProductId().equals(productId)) {
+                rules.add(rule);
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * Передаёт по возрастанию id всех пользователей, которым подходит хотя бы одно из правил.
+     * Пользователи проверяются по мере чтения их транзакций, список аудитории в памяти не собирается.
+     */
+    public void forEachAudienceUser(List<CompiledRule> rules, Consumer<UUID> handler) {
+        audienceRepository.forEachUserFacts(facts -> {
+            for (CompiledRule rule : rules) {
+                if (evaluator.evaluate(rule, facts)) {
+                    handler.accept(facts.getUserId());
+                    return;
+                }
+            }
+        });
+    }
+
+    /**
+     * Страница правил после курсора по возрастанию id; limit == null — все оставшиеся.
+     */
+    public List<RuleResponse> list(UUID cursor, Integer limit) {
+        RuleRegistry.RuleSnapshot snapshot = registry.current();
+        List<RuleResponse> responses = snapshot.responses();
+        int from = snapshot.indexAfter(cursor);
+        int to = limit != null ? (int) Math.min(responses.size(), (long) from + limit) : responses.size();
+        return responses.subList(from, to);
     }
 
     @Transactional
-    @CacheEvict(cacheNames = "ruleCache", allEntries = true)
     public void deleteByProductId(UUID productId) {
         repo.deleteByProductId(productId);
+        events.publishEvent(new RuleRegistry.RulesDeleted(productId));
+    }
+
+    public List<DynamicRule> findAllEntities() {
+        return registry.current().rules();
     }
 
-    @Transactional(readOnly = true)
-    @Cacheable(cacheNames = "ruleCache", key = "'allEntities'")
-    public java.util.List<DynamicRule> findAllEntities() {
-        return repo.findAll();
+    public CompiledRuleSet findAllCompiled() {
+        return registry.current().compiled();
     }
-}
\ No newline at end of file
+}
@@ -1,57 +1,96 @@
 package ru.projectteamwork.finance_recommendations.domain.service;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.Cache;
-import org.springframework.cache.CacheManager;
-import org.springframework.cache.annotation.Cacheable;
-import ru.projectteamwork.finance_recommendations.domain.DynamicRuleStat;
-import ru.projectteamwork.finance_recommendations.repository.DynamicRuleStatRepository;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-import ru.projectteamwork.finance_recommendations.repository.impl.RecommendationsRepositoryImpl;
+import ru.projectteamwork.finance_recommendations.evaluator.CompiledRule;
+import ru.projectteamwork.finance_recommendations.repository.RuleStatFlushRepository;
+import ru.projectteamwork.finance_recommendations.rules.BuiltInRules;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Счётчики срабатываний копятся в памяти и периодически сбрасываются одним пакетом
+ * в dynamic_rule_stat, а для встроенных правил — в builtin_rule_stat.
+ * Счётчики правил, которых больше нет в реестре, отбрасываются при сбросе.
+ */
 @Service
 public class RuleStatService {
 
-    private final DynamicRuleStatRepository statRepository;
+    private final RuleStatFlushRepository flushRepository;
+    private final BuiltInRules builtInRules;
+    private final RuleRegistry registry;
+    private final ConcurrentHashMap<UUID, LongAdder> pending = new ConcurrentHashMap<>();
 
     private final Logger logger = LoggerFactory.getLogger(RuleStatService.class);
 
-    @Autowired
-    private CacheManager cacheManager;
+    public RuleStatService(RuleStatFlushRepository flushRepository, BuiltInRules builtInRules,
+                           RuleRegistry registry) {
+        this.flushRepository = flushRepository;
+        this.builtInRules = builtInRules;
+        this.registry = registry;
+    }
 
-    public RuleStatService(DynamicRuleStatRepository statRepository) {
-        this.statRepository = statRepository;
+    @PostConstruct
+    public void registerBuiltInRules() {
+        flushRepository.registerBuiltInRules(builtInRules.ids());
     }
 
-    @Transactional
     public void inc(UUID ruleId) {
-        DynamicRuleStat stat = statRepository.findById(ruleId)
-                .orElseGet(() -> {
-                    DynamicRuleStat s = new DynamicRuleStat();
-                    s.setRuleId(ruleId);
-                    s.setFireCount(0L);
-                    return s;
-                });
-        stat.setFireCount(stat.getFireCount() + 1);
-        statRepository.save(stat);
-
-        Cache cache = cacheManager.getCache("ruleStatCache");
-        if (cache != null) {
-            cache.put(ruleId, stat.getFireCount());
-        } else {
-            logger.info("кеш не был найден");
+        pending.computeIfAbsent(ruleId, id -> new LongAdder()).increment();
+    }
+
+    public long getPendingFireCount(UUID ruleId) {
+        LongAdder adder = pending.get(ruleId);
+        return adder != null ? adder.sum() : 0L;
+    }
+
+    @Scheduled(fixedDelayString = "${rule-stats.flush-interval-ms:5000}")
+    public synchronized void flush() {
+        dropDeletedRules();
+        Map<UUID, Long> deltas = new HashMap<>();
+        pending.forEach((ruleId, adder) -> {
+            long delta = adder.sumThenReset();
+            if (delta != 0) {
+                deltas.put(ruleId, delta);
+            }
+        });
+        if (deltas.isEmpty()) {
+            return;
         }
+
+        try {
+            flushRepository.addFireCounts(deltas);
+        } catch (RuntimeException e) {
+            logger.error("Не удалось сохранить статистику срабатываний правил, попытка будет повторена", e);
+            deltas.forEach((ruleId, delta) -> pending.computeIfAbsent(ruleId, id -> new LongAdder()).add(delta));
+            return;
+        }
+        logger.debug("Сохранена статистика срабатываний для {} правил", deltas.size());
     }
 
-    @Cacheable(value = "ruleStatCache", key = "#ruleId")
-    public Long getFireCount(UUID ruleId) {
-        return statRepository.findById(ruleId)
-                .map(DynamicRuleStat::getFireCount)
-                .orElse(0L);
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    // Срабатывания удалённых правил в БД всё равно не попадут; без этого их id копились бы в pending
+    private void dropDeletedRules() {
+        List<CompiledRule> rules = registry.current().compiled().rules();
+        Set<UUID> live = new HashSet<>(rules.size() * 2);
+        for (CompiledRule rule : rules) {
+            live.add(rule.getId());
+        }
+        pending.keySet().removeIf(ruleId -> !live.contains(ruleId));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,119 @@
+package ru.projectteamwork.finance_recommendations.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Пошаговое объяснение расчёта рекомендаций одного пользователя: откуда взяты факты,
+ * результат и время каждого встроенного и динамического правила и их условий.
+ * Собирается только для /explain; в обычном расчёте вместо него передаётся null.
+ */
+public class RecommendationTrace {
+    private final String user_id;
+    private String result_cache;
+    private FactsStep facts;
+    private final List<StaticRuleStep> static_rules = new ArrayList<>();
+    private final List<DynamicRuleStep> dynamic_rules = new ArrayList<>();
+    private List<RecommendationDTO> recommendations;
+    private double time_us;
+
+    private List<PredicateStep> pendingPredicates = new ArrayList<>();
+
+    public RecommendationTrace(UUID userId) {
+        this.user_id = userId.toString();
+    }
+
+    public void facts(String source, String sql, long nanos) {
+        this.facts = new FactsStep(source, sql, micros(nanos));
+    }
+
+    /**
+     * Группа условий встроенного правила; для правила с условиями «или» — по шагу на каждую проверенную группу.
+     */
+    public void staticRule(String rule, UUID ruleId, UUID productId, boolean matched, long nanos) {
+        static_rules.add(new StaticRuleStep(rule, ruleId, productId, matched, micros(nanos), pendingPredicates));
+        pendingPredicates = new ArrayList<>();
+    }
+
+    /**
+     * Условие правила; относится к правилу, которое будет передано в {@link #staticRule} или {@link #dynamicRule}.
+     *
+     * @param memoized результат взят из уже вычисленных для этого пользователя условий других правил
+     */
+    public void predicate(String query, List<String> arguments, boolean negate, boolean result,
+                          boolean memoized, long nanos) {
+        pendingPredicates.add(new PredicateStep(query, arguments, negate, result, memoized, micros(nanos)));
+    }
+
+    public void dynamicRule(UUID ruleId, UUID productId, boolean matched, long nanos) {
+        dynamic_rules.add(new DynamicRuleStep(ruleId, productId, matched, micros(nanos), pendingPredicates));
+        pendingPredicates = new ArrayList<>();
+    }
+
+    public String getUser_id() {
+        return user_id;
+    }
+
+    public String getResult_cache() {
+        return result_cache;
+    }
+
+    public void setResult_cache(String result_cache) {
+        this.result_cache = result_cache;
+    }
+
+    public FactsStep getFacts() {
+        return facts;
+    }
+
+    public List<StaticRuleStep> getStatic_rules() {
+        return static_rules;
+    }
+
+    public List<DynamicRuleStep> getDynamic_rules() {
+        return dynamic_rules;
+    }
+
+    public List<RecommendationDTO> getRecommendations() {
+        return recommendations;
+    }
+
+    public void setRecommendations(List<RecommendationDTO> recommendations) {
+        this.recommendations = recommendations;
+    }
+
+    public double getTime_us() {
+        return time_us;
+    }
+
+    public void setTime_us(long nanos) {
+        this.time_us = micros(nanos);
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1_000.0;
+    }
+
+    /**
+     * @param source columnar, cache, rollup или sql
+     * @param sql    выполненный запрос, если факты читались из БД
+     */
+    public record FactsStep(String source, String sql, double time_us) {
+    }
+
+    public record StaticRuleStep(String rule, UUID rule_id, UUID product_id, boolean matched, double time_us,
+                                 List<PredicateStep> predicates) {
+    }
+
+    /**
+     * Условия перечислены в порядке вычисления; после первого ложного условия остальные не вычисляются.
+     */
+    public record DynamicRuleStep(UUID rule_id, UUID product_id, boolean matched, double time_us,
+                                  List<PredicateStep> predicates) {
+    }
+
+    public record PredicateStep(String query, List<String> arguments, boolean negate, boolean result,
+                                boolean memoized, double time_us) {
+    }
+}
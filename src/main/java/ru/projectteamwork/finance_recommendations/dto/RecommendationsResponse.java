@@ -1,16 +1,24 @@
 package ru.projectteamwork.finance_recommendations.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.util.List;
 
 public class    RecommendationsResponse {
     private String user_id;
     private List<RecommendationDTO> recommendations;
+    private boolean partial;
 
     public RecommendationsResponse(String user_id, List<RecommendationDTO> recommendations) {
         this.user_id = user_id;
         this.recommendations = recommendations;
     }
 
+    public RecommendationsResponse(String user_id, RecommendationsResult result) {
+        this(user_id, result.recommendations());
+        this.partial = result.partial();
+    }
+
     public String getUser_id() {
         return user_id;
     }
@@ -19,6 +27,14 @@ public class    RecommendationsResponse {
         return recommendations;
     }
 
+    /**
+     * Признак выводится только у неполного ответа, полученного по истечении срока запроса.
+     */
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    public boolean isPartial() {
+        return partial;
+    }
+
     public void setUser_id(String user_id) {
         this.user_id = user_id;
     }
@@ -26,5 +42,9 @@ public class    RecommendationsResponse {
     public void setRecommendations(List<RecommendationDTO> recommendations) {
         this.recommendations = recommendations;
     }
+
+    public void setPartial(boolean partial) {
+        this.partial = partial;
+    }
 }
 
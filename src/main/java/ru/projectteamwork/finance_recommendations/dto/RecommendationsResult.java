@@ -0,0 +1,13 @@
+package ru.projectteamwork.finance_recommendations.dto;
+
+import java.util.List;
+
+/**
+ * Рекомендации пользователя; partial = true, если расчёт прерван по сроку запроса и список может быть неполным.
+ */
+public record RecommendationsResult(List<RecommendationDTO> recommendations, boolean partial) {
+
+    public static RecommendationsResult complete(List<RecommendationDTO> recommendations) {
+        return new RecommendationsResult(recommendations, false);
+    }
+}
@@ -0,0 +1,26 @@
+package ru.projectteamwork.finance_recommendations.evaluator;
+
+import ru.projectteamwork.finance_recommendations.domain.enums.QueryType;
+import ru.projectteamwork.finance_recommendations.repository.UserFactSnapshot;
+
+import java.util.List;
+
+public record ActiveUserOfPredicate(String productType) implements FactPredicate {
+
+    public static final int MIN_TRANSACTIONS = 5;
+
+    @Override
+    public QueryType type() {
+        return QueryType.ACTIVE_USER_OF;
+    }
+
+    @Override
+    public List<String> arguments() {
+        return List.of(productType);
+    }
+
+    @Override
+    public boolean test(UserFactSnapshot facts) {
+        return facts.countTransactions(productType) >= MIN_TRANSACTIONS;
+    }
+}
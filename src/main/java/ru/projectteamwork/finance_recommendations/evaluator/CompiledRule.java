@@ -0,0 +1,76 @@
+package ru.projectteamwork.finance_recommendations.evaluator;
+
+import ru.projectteamwork.finance_recommendations.dto.RecommendationDTO;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Скомпилированное правило: конъюнкция условий, аргументы которых разобраны один раз при создании или загрузке правила.
+ * Встроенный продукт с условиями «или» представлен несколькими такими правилами с одним id.
+ */
+public final class CompiledRule {
+
+    private final UUID id;
+    private final String builtInName;
+    private final UUID productId;
+    private final RecommendationDTO recommendation;
+    private final FactPredicate[] predicates;
+    private final boolean[] negated;
+
+    public CompiledRule(UUID id, UUID productId, RecommendationDTO recommendation,
+                        List<FactPredicate> predicates, List<Boolean> negated) {
+        this(id, null, productId, recommendation, predicates, negated);
+    }
+
+    /**
+     * @param builtInName имя встроенного правила; null для динамического
+     */
+    public CompiledRule(UUID id, String builtInName, UUID productId, RecommendationDTO recommendation,
+                        List<FactPredicate> predicates, List<Boolean> negated) {
+        if (predicates.size() != negated.size()) {
+            throw new IllegalArgumentException("Количество условий и флагов отрицания не совпадает");
+        }
+        this.id = id;
+        this.builtInName = builtInName;
+        this.productId = productId;
+        this.recommendation = recommendation;
+        this.predicates = predicates.toArray(new FactPredicate[0]);
+        this.negated = new boolean[negated.size()];
+        for (int i = 0; i < this.negated.length; i++) {
+            this.negated[i] = negated.get(i);
+        }
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public boolean isBuiltIn() {
+        return builtInName != null;
+    }
+
+    public String getBuiltInName() {
+        return builtInName;
+    }
+
+    public UUID getProductId() {
+        return productId;
+    }
+
+    public RecommendationDTO getRecommendation() {
+        return recommendation;
+    }
+
+    public int size() {
+        return predicates.length;
+    }
+
+    public FactPredicate predicate(int index) {
+        return predicates[index];
+    }
+
+    public boolean isNegated(int index) {
+        return negated[index];
+    }
+}
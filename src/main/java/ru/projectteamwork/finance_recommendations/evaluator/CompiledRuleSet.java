@@ -0,0 +1,196 @@
+package ru.projectteamwork.finance_recommendations.evaluator;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Набор динамических правил, в котором одинаковые атомарные условия объединены.
+ * Каждое правило ссылается на номера общих условий, поэтому при проверке
+ * одного пользователя каждое различное условие вычисляется не более одного раза.
+ * <p>
+ * По каждому общему условию накапливается доля истинных результатов, по которой {@link #reorder(long)}
+ * переставляет условия внутри правил: дешёвые и чаще отсекающие правило проверяются первыми.
+ * Стоимость условия постоянная — число обращений к снимку фактов ({@link FactPredicate#lookups()}):
+ * время одного обращения к снимку в памяти слишком мало и шумно, чтобы по нему сравнивать условия.
+ * Результат правила от порядка не зависит.
+ */
+public final class CompiledRuleSet {
+
+    private static final double MIN_REJECT_RATE = 0.001;
+    private static final CompiledRuleSet EMPTY = new CompiledRuleSet(List.of());
+
+    private final List<CompiledRule> rules;
+    private final FactPredicate[] atoms;
+    private final int[][] atomIds;
+    private final LongAdder[] evaluations;
+    private final LongAdder[] passes;
+    private volatile int[][] order;
+
+    public CompiledRuleSet(List<CompiledRule> rules) {
+        this.rules = Collections.unmodifiableList(rules);
+        Map<FactPredicate, Integer> index = new HashMap<>();
+        this.atomIds = new int[rules.size()][];
+        for (int r = 0; r < rules.size(); r++) {
+            CompiledRule rule = rules.get(r);
+            int[] ids = new int[rule.size()];
+            for (int i = 0; i < rule.size(); i++) {
+                FactPredicate predicate = rule.predicate(i);
+                Integer id = index.get(predicate);
+                if (id == null) {
+                    id = index.size();
+                    index.put(predicate, id);
+                }
+                ids[i] = id;
+            }
+            atomIds[r] = ids;
+        }
+        this.atoms = new FactPredicate[index.size()];
+        index.forEach((predicate, id) -> atoms[id] = predicate);
+
+        this.evaluations = newAdders(atoms.length);
+        this.passes = newAdders(atoms.length);
+        int[][] initialOrder = new int[rules.size()][];
+        for (int r = 0; r < initialOrder.length; r++) {
+            initialOrder[r] = identity(atomIds[r].length);
+        }
+        this.order = initialOrder;
+    }
+
+    public static CompiledRuleSet empty() {
+        return EMPTY;
+    }
+
+    public List<CompiledRule> rules() {
+        return rules;
+    }
+
+    public int size() {
+        return rules.size();
+    }
+
+    public CompiledRule rule(int index) {
+        return rules.get(index);
+    }
+
+    public int atomCount() {
+        return atoms.length;
+    }
+
+    public FactPredicate atom(int atomId) {
+        return atoms[atomId];
+    }
+
+    /**
+     * Номер общего условия для i-го условия правила.
+     */
+    public int atomId(int ruleIndex, int predicateIndex) {
+        return atomIds[ruleIndex][predicateIndex];
+    }
+
+    /**
+     * Текущий порядок проверки условий правила: номера условий в исходной нумерации.
+     */
+    public int[] order(int ruleIndex) {
+        return order[ruleIndex];
+    }
+
+    public void record(int atomId, boolean result) {
+        evaluations[atomId].increment();
+        if (result) {
+            passes[atomId].increment();
+        }
+    }
+
+    public long evaluations(int atomId) {
+        return evaluations[atomId].sum();
+    }
+
+    public double passRate(int atomId) {
+        long total = evaluations[atomId].sum();
+        return total == 0 ? 0.0 : (double) passes[atomId].sum() / total;
+    }
+
+    /**
+     * Пересчитывает порядок условий каждого правила по накопленной статистике.
+     * Условия сортируются по отношению стоимости к вероятности отсечь правило.
+     * Условию, проверенному меньше minSamples раз (например, стоящему за селективным условием),
+     * приписывается вероятность 0.5.
+     *
+     * @return количество правил, у которых изменился порядок
+     */
+    public int reorder(long minSamples) {
+        boolean sampled = false;
+        for (int a = 0; a < atoms.length && !sampled; a++) {
+            sampled = evaluations[a].sum() >= minSamples;
+        }
+        if (!sampled) {
+            return 0;
+        }
+
+        int[][] current = order;
+        int[][] next = new int[current.length][];
+        int changed = 0;
+        for (int r = 0; r < current.length; r++) {
+            next[r] = current[r];
+            int[] ids = atomIds[r];
+            if (ids.length < 2) {
+                continue;
+            }
+            CompiledRule rule = rules.get(r);
+            double[] rank = new double[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                int atomId = ids[i];
+                double pass = evaluations[atomId].sum() >= minSamples ? passRate(atomId) : 0.5;
+                double rejects = rule.isNegated(i) ? pass : 1.0 - pass;
+                rank[i] = atoms[atomId].lookups() / Math.max(rejects, MIN_REJECT_RATE);
+            }
+            // сортировка устойчивая: при равном ранге сохраняется исходный порядок
+            Integer[] sorted = new Integer[ids.length];
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = i;
+            }
+            Arrays.sort(sorted, Comparator.comparingDouble(i -> rank[i]));
+            int[] ruleOrder = new int[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                ruleOrder[i] = sorted[i];
+            }
+            if (!Arrays.equals(ruleOrder, current[r])) {
+                next[r] = ruleOrder;
+                changed++;
+            }
+        }
+        if (changed > 0) {
+            order = next;
+        }
+        return changed;
+    }
+
+    private static LongAdder[] newAdders(int size) {
+        LongAdder[] adders = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static int[] identity(int size) {
+        int[] result = new int[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = i;
+        }
+        return result;
+    }
+
+    /**
+     * Память результатов условий на время проверки одного пользователя:
+     * 0 — не вычислено, 1 — истинно, 2 — ложно.
+     */
+    public byte[] newMemo() {
+        return new byte[atoms.length];
+    }
+}
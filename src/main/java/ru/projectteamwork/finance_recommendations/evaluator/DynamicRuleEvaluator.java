@@ -1,105 +1,68 @@
 package ru.projectteamwork.finance_recommendations.evaluator;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.springframework.cache.annotation.Cacheable;
-import ru.projectteamwork.finance_recommendations.domain.DynamicRule;
-import ru.projectteamwork.finance_recommendations.domain.DynamicRuleQuery;
-import ru.projectteamwork.finance_recommendations.repository.RecommendationsRepository;
-
-import java.util.List;
-import java.util.UUID;
+import ru.projectteamwork.finance_recommendations.dto.RecommendationTrace;
+import ru.projectteamwork.finance_recommendations.repository.UserFactSnapshot;
 
 public class DynamicRuleEvaluator {
 
-    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
-    private final RecommendationsRepository repository;
-
-    public DynamicRuleEvaluator(RecommendationsRepository repository) {
-        this.repository = repository;
-    }
+    private static final byte MEMO_TRUE = 1;
+    private static final byte MEMO_FALSE = 2;
 
-    @Cacheable(cacheNames = "ruleEvaluationCache", key = "#rule.id + '-' + #userIdStr")
-    public boolean evaluate(DynamicRule rule, String userIdStr) {
-        final UUID userId = UUID.fromString(userIdStr);
-        for (DynamicRuleQuery query : rule.getQueries()) {
-            boolean result = evalQuery(query, userId);
-            if (query.isNegate()) result = !result;
+    public boolean evaluate(CompiledRule rule, UserFactSnapshot facts) {
+        for (int i = 0; i < rule.size(); i++) {
+            boolean result = rule.predicate(i).test(facts);
+            if (rule.isNegated(i)) result = !result;
             if (!result) return false;
         }
         return true;
     }
 
-    private boolean evalQuery(DynamicRuleQuery q, UUID userId) {
-        final String type = q.getQuery().getValue().trim().toUpperCase();
-        final List<String> args = readArgs(q.getArgumentsJson());
+    /**
+     * Проверяет правило из набора, переиспользуя уже вычисленные для этого пользователя условия.
+     */
+    public boolean evaluate(CompiledRuleSet ruleSet, int ruleIndex, UserFactSnapshot facts, byte[] memo) {
+        return evaluate(ruleSet, ruleIndex, facts, memo, null, true);
+    }
 
-        switch (type) {
-            case "USER_OF": {
-                requireArgs(type, args, 1);
-                String productType = args.get(0);
-                return repository.userHasProductType(userId, productType);
-            }
-            case "ACTIVE_USER_OF": {
-                requireArgs(type, args, 1);
-                String productType = args.get(0);
-                int count = repository.countTransactionsByProductType(userId, productType);
-                return count >= 5;
+    /**
+     * @param trace   если не null, в него записывается каждое проверенное условие
+     * @param trace   если не null, в него записывается каждое проверенное условие с временем проверки;
+     *                без trace время не замеряется
+     * @param measure учитывать ли результаты условий в статистике порядка проверки; false для расчётов,
+     *                которые не должны влиять на боевые показатели (/explain, предрасчёт, пакетная выгрузка)
+     */
+    public boolean evaluate(CompiledRuleSet ruleSet, int ruleIndex, UserFactSnapshot facts, byte[] memo,
+                            RecommendationTrace trace, boolean measure) {
+        CompiledRule rule = ruleSet.rule(ruleIndex);
+        int[] order = ruleSet.order(ruleIndex);
+        for (int i : order) {
+            int atomId = ruleSet.atomId(ruleIndex, i);
+            byte known = memo[atomId];
+            boolean result;
+            long elapsed = 0;
+            if (known == 0) {
+                FactPredicate atom = ruleSet.atom(atomId);
+                if (trace == null) {
+                    result = atom.test(facts);
+                } else {
+                    long started = System.nanoTime();
+                    result = atom.test(facts);
+                    elapsed = System.nanoTime() - started;
+                }
+                if (measure) {
+                    ruleSet.record(atomId, result);
+                }
+                memo[atomId] = result ? MEMO_TRUE : MEMO_FALSE;
+            } else {
+                result = known == MEMO_TRUE;
             }
-            case "TRANSACTION_SUM_COMPARE": {
-                // [productType, transactionsType, operator, constant]
-                requireArgs(type, args, 4);
-                String productType = args.get(0);
-                String transactionsType = args.get(1); // e.g. DEPOSIT / WITHDRAW
-                String operator = args.get(2);         // >, <, =, >=, <=
-                int constant = Integer.parseInt(args.get(3));
-                int sum = repository.sumAmountByProductAndTxType(userId, productType, transactionsType);
-                return compare(sum, operator, constant);
+            if (rule.isNegated(i)) result = !result;
+            if (trace != null) {
+                FactPredicate atom = ruleSet.atom(atomId);
+                trace.predicate(atom.type().getValue(), atom.arguments(), rule.isNegated(i), result, known != 0, elapsed);
             }
-            case "TRANSACTION_SUM_COMPARE_DEPOSIT_WITHDRAW": {
-                requireArgs(type, args, 5);
-                String productTypeFirst = args.get(0);
-                String transactionsTypeFirst = args.get(1);
-                String operator = args.get(2);
-                String productTypeSecond = args.get(3);
-                String transactionsTypeSecond = args.get(4);
-
-                int deposits = repository.sumAmountByProductAndTxType(userId, productTypeFirst, transactionsTypeFirst);
-                int withdraws = repository.sumAmountByProductAndTxType(userId, productTypeSecond, transactionsTypeSecond);
-
-                return compare(deposits, operator, withdraws);
-            }
-            default:
-                throw new IllegalArgumentException("Неизвестный тип запроса: " + type);
-        }
-    }
-
-    private static void requireArgs(String type, List<String> args, int expected) {
-        if (args == null || args.size() < expected) {
-            throw new IllegalArgumentException(
-                    "Неверное количество аргументов для " + type +
-                            ": нужно " + expected + ", получено " + (args == null ? 0 : args.size())
-            );
-        }
-    }
-
-    private boolean compare(int left, String operator, int right) {
-        return switch (operator) {
-            case ">" -> left > right;
-            case "<" -> left < right;
-            case "=" -> left == right;
-            case ">=" -> left >= right;
-            case "<=" -> left <= right;
-            default -> throw new IllegalArgumentException("Неизвестный оператор: " + operator);
-        };
-    }
-
-    private static List<String> readArgs(String json) {
-        try {
-            return OBJECT_MAPPER.readValue(json, new TypeReference<List<String>>() {
-            });
-        } catch (Exception e) {
-            throw new RuntimeException("Недопустимые аргументы JSON: " + json, e);
+            if (!result) return false;
         }
+        return true;
     }
-}
\ No newline at end of file
+}
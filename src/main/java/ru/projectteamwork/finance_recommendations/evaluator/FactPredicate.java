@@ -0,0 +1,29 @@
+package ru.projectteamwork.finance_recommendations.evaluator;
+
+import ru.projectteamwork.finance_recommendations.domain.enums.QueryType;
+import ru.projectteamwork.finance_recommendations.repository.UserFactSnapshot;
+
+import java.util.List;
+
+/**
+ * Атомарное условие правила с заранее разобранными аргументами.
+ * Реализации неизменяемы и сравниваются по значению.
+ */
+public interface FactPredicate {
+
+    QueryType type();
+
+    /**
+     * Нормализованные аргументы в том виде, в котором они задаются в правиле.
+     */
+    List<String> arguments();
+
+    boolean test(UserFactSnapshot facts);
+
+    /**
+     * Число обращений к снимку фактов — стоимость проверки при выборе порядка условий.
+     */
+    default int lookups() {
+        return 1;
+    }
+}
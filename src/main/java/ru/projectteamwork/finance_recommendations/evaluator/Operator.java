@@ -0,0 +1,38 @@
+package ru.projectteamwork.finance_recommendations.evaluator;
+
+public enum Operator {
+    GT(">"),
+    LT("<"),
+    EQ("="),
+    GE(">="),
+    LE("<=");
+
+    private final String symbol;
+
+    Operator(String symbol) {
+        this.symbol = symbol;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public boolean apply(long left, long right) {
+        return switch (this) {
+            case GT -> left > right;
+            case LT -> left < right;
+            case EQ -> left == right;
+            case GE -> left >= right;
+            case LE -> left <= right;
+        };
+    }
+
+    public static Operator fromSymbol(String symbol) {
+        for (Operator operator : values()) {
+            if (operator.symbol.equals(symbol)) {
+                return operator;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестный оператор: " + symbol);
+    }
+}
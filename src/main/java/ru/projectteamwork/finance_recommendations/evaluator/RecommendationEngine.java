@@ -0,0 +1,195 @@
+package ru.projectteamwork.finance_recommendations.evaluator;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.projectteamwork.finance_recommendations.domain.service.RuleRegistry;
+import ru.projectteamwork.finance_recommendations.domain.service.RuleService;
+import ru.projectteamwork.finance_recommendations.domain.service.RuleStatService;
+import ru.projectteamwork.finance_recommendations.dto.RecommendationDTO;
+import ru.projectteamwork.finance_recommendations.dto.RecommendationTrace;
+import ru.projectteamwork.finance_recommendations.dto.RecommendationsResult;
+import ru.projectteamwork.finance_recommendations.repository.RequestDeadline;
+import ru.projectteamwork.finance_recommendations.repository.UserFactSnapshot;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Применяет встроенные и динамические правила к уже загруженному снимку фактов пользователя.
+ * Оба вида правил входят в один {@link CompiledRuleSet}, поэтому общие условия вычисляются один раз.
+ */
+@Component
+public class RecommendationEngine {
+    private final RuleService ruleService;
+    private final RuleStatService ruleStatService;
+    private final DynamicRuleEvaluator evaluator;
+    private final MeterRegistry meterRegistry;
+    private final Map<UUID, Timer> ruleTimers = new ConcurrentHashMap<>();
+    private final Counter staticServed;
+    private final Counter dynamicServed;
+    private final int sampleRate;
+
+    /**
+     * @param sampleRate в таймерах правил учитывается один из sampleRate обслуживаемых расчётов;
+     *                   у остальных время не замеряется
+     */
+    public RecommendationEngine(RuleService ruleService,
+                                RuleStatService ruleStatService,
+                                MeterRegistry meterRegistry,
+                                @Value("${recommendations.engine.sample-rate:64}") int sampleRate) {
+        this.ruleService = ruleService;
+        this.ruleStatService = ruleStatService;
+        this.meterRegistry = meterRegistry;
+        this.sampleRate = Math.max(1, sampleRate);
+        this.evaluator = new DynamicRuleEvaluator();
+        this.staticServed = servedCounter("static");
+        this.dynamicServed = servedCounter("dynamic");
+    }
+
+    public List<RecommendationDTO> recommend(UserFactSnapshot facts) {
+        return recommend(facts, ruleService.findAllCompiled());
+    }
+
+    public List<RecommendationDTO> recommend(UserFactSnapshot facts, CompiledRuleSet rules) {
+        return recommend(facts, rules, true);
+    }
+
+    /**
+     * @param serving false для фонового предрасчёта и пакетной выгрузки: срабатывания правил, выданные рекомендации,
+     *                время проверки правил и статистика порядка условий не учитываются, время не замеряется
+     */
+    public List<RecommendationDTO> recommend(UserFactSnapshot facts, CompiledRuleSet rules, boolean serving) {
+        return recommend(facts, rules, serving, null, null).recommendations();
+    }
+
+    /**
+     * Срок проверяется перед каждым правилом; если он истёк, возвращаются рекомендации уже выполненных правил
+     * с признаком partial. Встроенные правила идут в наборе первыми и проверяются раньше динамических.
+     */
+    public RecommendationsResult recommend(UserFactSnapshot facts, RequestDeadline deadline) {
+        return recommend(facts, ruleService.findAllCompiled(), true, null, deadline);
+    }
+
+    /**
+     * Расчёт для /explain: текущие правила, без учёта в статистике и таймерах, с записью каждого шага в trace.
+     */
+    public List<RecommendationDTO> explain(UserFactSnapshot facts, RecommendationTrace trace) {
+        return recommend(facts, ruleService.findAllCompiled(), false, trace, null).recommendations();
+    }
+
+    private RecommendationsResult recommend(UserFactSnapshot facts, CompiledRuleSet rules, boolean serving,
+                                            RecommendationTrace trace, RequestDeadline deadline) {
+        List<RecommendationDTO> staticRecommendations = new ArrayList<>();
+        List<RecommendationDTO> dynamicRecommendations = new ArrayList<>();
+
+        byte[] memo = rules.newMemo();
+        boolean measure = serving && trace == null;
+        boolean sampled = measure && (sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0);
+        boolean timed = sampled || trace != null;
+        UUID matchedBuiltIn = null;
+        boolean partial = false;
+        for (int i = 0; i < rules.size(); i++) {
+            if (deadline != null && deadline.isExpired()) {
+                partial = true;
+                break;
+            }
+            CompiledRule rule = rules.rule(i);
+            // группы «или» встроенного правила идут подряд: после первой выполненной остальные не проверяются
+            if (rule.isBuiltIn() && rule.getId().equals(matchedBuiltIn)) {
+                continue;
+            }
+            long started = timed ? System.nanoTime() : 0;
+            boolean matched = evaluator.evaluate(rules, i, facts, memo, trace, measure);
+            long elapsed = timed ? System.nanoTime() - started : 0;
+            if (sampled) {
+                ruleTimer(rule).record(elapsed, TimeUnit.NANOSECONDS);
+            }
+            if (trace != null) {
+                if (rule.isBuiltIn()) {
+                    trace.staticRule(rule.getBuiltInName(), rule.getId(), rule.getProductId(), matched, elapsed);
+                } else {
+                    trace.dynamicRule(rule.getId(), rule.getProductId(), matched, elapsed);
+                }
+            }
+            if (matched) {
+                if (serving) {
+                    ruleStatService.inc(rule.getId());
+                }
+                if (rule.isBuiltIn()) {
+                    matchedBuiltIn = rule.getId();
+                    staticRecommendations.add(rule.getRecommendation());
+                } else {
+                    dynamicRecommendations.add(rule.getRecommendation());
+                }
+            }
+        }
+
+        Set<String> recommendationsID = new HashSet<>();
+        List<RecommendationDTO> combinedRecommendations = new ArrayList<>();
+
+        for (RecommendationDTO recommendation : staticRecommendations) {
+            if (recommendationsID.add(recommendation.getId())) {
+                combinedRecommendations.add(recommendation);
+                if (serving) {
+                    staticServed.increment();
+                }
+            }
+        }
+
+        for (RecommendationDTO recommendation : dynamicRecommendations) {
+            if (recommendationsID.add(recommendation.getId())) {
+                combinedRecommendations.add(recommendation);
+                if (serving) {
+                    dynamicServed.increment();
+                }
+            }
+        }
+
+        return new RecommendationsResult(combinedRecommendations, partial);
+    }
+
+    /**
+     * Таймеры удалённых правил убираются и из словаря, и из реестра метрик, иначе их число только растёт.
+     * Расчёт по предыдущему снимку может успеть заново завести таймер — его уберёт следующая версия правил.
+     */
+    @EventListener
+    public void onRulesPublished(RuleRegistry.RulesPublished event) {
+        Set<UUID> live = new HashSet<>();
+        for (CompiledRule rule : event.snapshot().compiled().rules()) {
+            live.add(rule.getId());
+        }
+        ruleTimers.entrySet().removeIf(entry -> {
+            if (live.contains(entry.getKey())) {
+                return false;
+            }
+            meterRegistry.remove(entry.getValue());
+            return true;
+        });
+    }
+
+    private Timer ruleTimer(CompiledRule rule) {
+        return ruleTimers.computeIfAbsent(rule.getId(), id -> Timer.builder("recommendations.rule.evaluation")
+                .description("Время проверки правила рекомендаций")
+                .tag("kind", rule.isBuiltIn() ? "static" : "dynamic")
+                .tag("rule", rule.isBuiltIn() ? rule.getBuiltInName() : String.valueOf(id))
+                .register(meterRegistry));
+    }
+
+    private Counter servedCounter(String kind) {
+        return Counter.builder("recommendations.served")
+                .description("Количество выданных рекомендаций")
+                .tag("kind", kind)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,108 @@
+package ru.projectteamwork.finance_recommendations.evaluator;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ru.projectteamwork.finance_recommendations.domain.DynamicRule;
+import ru.projectteamwork.finance_recommendations.domain.DynamicRuleQuery;
+import ru.projectteamwork.finance_recommendations.domain.enums.QueryType;
+import ru.projectteamwork.finance_recommendations.dto.RecommendationDTO;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public final class RuleCompiler {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private RuleCompiler() {
+    }
+
+    public static CompiledRule compile(DynamicRule rule) {
+        List<FactPredicate> predicates = new ArrayList<>(rule.getQueries().size());
+        List<Boolean> negated = new ArrayList<>(rule.getQueries().size());
+        for (DynamicRuleQuery query : rule.getQueries()) {
+            predicates.add(compilePredicate(query.getQuery(), readArgs(query.getArgumentsJson())));
+            negated.add(query.isNegate());
+        }
+        RecommendationDTO recommendation = new RecommendationDTO(
+                rule.getProductName(),
+                rule.getProductId().toString(),
+                rule.getProductText()
+        );
+        return new CompiledRule(rule.getId(), rule.getProductId(), recommendation, predicates, negated);
+    }
+
+    public static FactPredicate compilePredicate(QueryType type, List<String> args) {
+        if (type == null) {
+            throw new IllegalArgumentException("Не указан тип запроса");
+        }
+        switch (type) {
+            case USER_OF: {
+                requireArgs(type, args, 1);
+                return new UserOfPredicate(normalize(args.get(0)));
+            }
+            case ACTIVE_USER_OF: {
+                requireArgs(type, args, 1);
+                return new ActiveUserOfPredicate(normalize(args.get(0)));
+            }
+            case TRANSACTION_SUM_COMPARE: {
+                // [productType, transactionsType, operator, constant]
+                requireArgs(type, args, 4);
+                return new SumComparePredicate(
+                        normalize(args.get(0)),
+                        normalize(args.get(1)),
+                        Operator.fromSymbol(args.get(2).trim()),
+                        parseConstant(args.get(3))
+                );
+            }
+            case TRANSACTION_SUM_COMPARE_DEPOSIT_WITHDRAW: {
+                requireArgs(type, args, 5);
+                return new SumPairComparePredicate(
+                        normalize(args.get(0)),
+                        normalize(args.get(1)),
+                        Operator.fromSymbol(args.get(2).trim()),
+                        normalize(args.get(3)),
+                        normalize(args.get(4))
+                );
+            }
+            default:
+                throw new IllegalArgumentException("Неизвестный тип запроса: " + type);
+        }
+    }
+
+    private static void requireArgs(QueryType type, List<String> args, int expected) {
+        if (args == null || args.size() < expected) {
+            throw new IllegalArgumentException(
+                    "Неверное количество аргументов для " + type.getValue() +
+                            ": нужно " + expected + ", получено " + (args == null ? 0 : args.size())
+            );
+        }
+        for (int i = 0; i < expected; i++) {
+            if (args.get(i) == null) {
+                throw new IllegalArgumentException("Не указан аргумент " + (i + 1) + " для " + type.getValue());
+            }
+        }
+    }
+
+    private static String normalize(String value) {
+        return value.trim().toUpperCase(Locale.ROOT);
+    }
+
+    private static long parseConstant(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Недопустимая константа: " + value, e);
+        }
+    }
+
+    private static List<String> readArgs(String json) {
+        try {
+            return OBJECT_MAPPER.readValue(json, new TypeReference<List<String>>() {
+            });
+        } catch (Exception e) {
+            throw new RuntimeException("Недопустимые аргументы JSON: " + json, e);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package ru.projectteamwork.finance_recommendations.evaluator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.projectteamwork.finance_recommendations.domain.service.RuleService;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Периодически переупорядочивает условия динамических правил по накопленной статистике
+ * и отдаёт текущий план проверки для management-эндпоинта.
+ */
+@Component
+public class RulePlanOptimizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(RulePlanOptimizer.class);
+
+    private final RuleService ruleService;
+    private final long minSamples;
+
+    public RulePlanOptimizer(RuleService ruleService,
+                             @Value("${recommendations.rule-plan.min-samples:1000}") long minSamples) {
+        this.ruleService = ruleService;
+        this.minSamples = minSamples;
+    }
+
+    @Scheduled(initialDelayString = "${recommendations.rule-plan.reorder-interval-ms:60000}",
+            fixedDelayString = "${recommendations.rule-plan.reorder-interval-ms:60000}")
+    public void reorder() {
+        int changed = ruleService.findAllCompiled().reorder(minSamples);
+        if (changed > 0) {
+            logger.info("Изменён порядок проверки условий у {} правил", changed);
+        }
+    }
+
+    public List<Map<String, Object>> plan() {
+        CompiledRuleSet ruleSet = ruleService.findAllCompiled();
+        List<Map<String, Object>> result = new ArrayList<>(ruleSet.size());
+        for (int r = 0; r < ruleSet.size(); r++) {
+            CompiledRule rule = ruleSet.rule(r);
+            List<Map<String, Object>> predicates = new ArrayList<>(rule.size());
+            for (int i : ruleSet.order(r)) {
+                int atomId = ruleSet.atomId(r, i);
+                FactPredicate atom = ruleSet.atom(atomId);
+                Map<String, Object> predicate = new LinkedHashMap<>();
+                predicate.put("position", i);
+                predicate.put("query", atom.type().getValue());
+                predicate.put("arguments", atom.arguments());
+                predicate.put("negate", rule.isNegated(i));
+                predicate.put("evaluations", ruleSet.evaluations(atomId));
+                predicate.put("pass_rate", ruleSet.passRate(atomId));
+                predicate.put("lookups", atom.lookups());
+                predicates.add(predicate);
+            }
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("rule_id", rule.getId());
+            body.put("product_id", rule.getProductId());
+            body.put("product_name", rule.getRecommendation().getName());
+            body.put("predicates", predicates);
+            result.add(body);
+        }
+        return result;
+    }
+}
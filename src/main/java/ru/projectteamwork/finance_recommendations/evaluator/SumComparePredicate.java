@@ -0,0 +1,27 @@
+package ru.projectteamwork.finance_recommendations.evaluator;
+
+import ru.projectteamwork.finance_recommendations.domain.enums.QueryType;
+import ru.projectteamwork.finance_recommendations.repository.UserFactSnapshot;
+
+import java.util.List;
+
+public record SumComparePredicate(String productType,
+                                  String transactionsType,
+                                  Operator operator,
+                                  long constant) implements FactPredicate {
+
+    @Override
+    public QueryType type() {
+        return QueryType.TRANSACTION_SUM_COMPARE;
+    }
+
+    @Override
+    public List<String> arguments() {
+        return List.of(productType, transactionsType, operator.getSymbol(), String.valueOf(constant));
+    }
+
+    @Override
+    public boolean test(UserFactSnapshot facts) {
+        return operator.apply(facts.sum(productType, transactionsType), constant);
+    }
+}
@@ -0,0 +1,35 @@
+package ru.projectteamwork.finance_recommendations.evaluator;
+
+import ru.projectteamwork.finance_recommendations.domain.enums.QueryType;
+import ru.projectteamwork.finance_recommendations.repository.UserFactSnapshot;
+
+import java.util.List;
+
+public record SumPairComparePredicate(String productTypeFirst,
+                                      String transactionsTypeFirst,
+                                      Operator operator,
+                                      String productTypeSecond,
+                                      String transactionsTypeSecond) implements FactPredicate {
+
+    @Override
+    public QueryType type() {
+        return QueryType.TRANSACTION_SUM_COMPARE_DEPOSIT_WITHDRAW;
+    }
+
+    @Override
+    public List<String> arguments() {
+        return List.of(productTypeFirst, transactionsTypeFirst, operator.getSymbol(), productTypeSecond, transactionsTypeSecond);
+    }
+
+    @Override
+    public int lookups() {
+        return 2;
+    }
+
+    @Override
+    public boolean test(UserFactSnapshot facts) {
+        long first = facts.sum(productTypeFirst, transactionsTypeFirst);
+        long second = facts.sum(productTypeSecond, transactionsTypeSecond);
+        return operator.apply(first, second);
+    }
+}
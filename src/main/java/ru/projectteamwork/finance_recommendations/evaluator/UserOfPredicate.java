@@ -0,0 +1,24 @@
+package ru.projectteamwork.finance_recommendations.evaluator;
+
+import ru.projectteamwork.finance_recommendations.domain.enums.QueryType;
+import ru.projectteamwork.finance_recommendations.repository.UserFactSnapshot;
+
+import java.util.List;
+
+public record UserOfPredicate(String productType) implements FactPredicate {
+
+    @Override
+    public QueryType type() {
+        return QueryType.USER_OF;
+    }
+
+    @Override
+    public List<String> arguments() {
+        return List.of(productType);
+    }
+
+    @Override
+    public boolean test(UserFactSnapshot facts) {
+        return facts.hasProductType(productType);
+    }
+}
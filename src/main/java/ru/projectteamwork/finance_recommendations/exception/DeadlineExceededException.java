@@ -0,0 +1,32 @@
+package ru.projectteamwork.finance_recommendations.exception;
+
+import ru.projectteamwork.finance_recommendations.dto.RecommendationDTO;
+
+import java.util.List;
+
+/**
+ * Срок запроса истёк до окончания расчёта. Если правила уже начали проверяться,
+ * recommendations содержит рекомендации, найденные до этого момента, иначе null.
+ */
+public class DeadlineExceededException extends RuntimeException {
+    private final transient List<RecommendationDTO> recommendations;
+
+    public DeadlineExceededException(String message) {
+        super(message);
+        this.recommendations = null;
+    }
+
+    public DeadlineExceededException(String message, Throwable throwable) {
+        super(message, throwable);
+        this.recommendations = null;
+    }
+
+    public DeadlineExceededException(String message, List<RecommendationDTO> recommendations) {
+        super(message);
+        this.recommendations = recommendations;
+    }
+
+    public List<RecommendationDTO> getRecommendations() {
+        return recommendations;
+    }
+}
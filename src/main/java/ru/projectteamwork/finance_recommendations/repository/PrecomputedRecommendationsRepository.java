@@ -0,0 +1,48 @@
+package ru.projectteamwork.finance_recommendations.repository;
+
+import ru.projectteamwork.finance_recommendations.dto.RecommendationDTO;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Хранилище заранее вычисленных рекомендаций и прогресса проходов по всем пользователям.
+ */
+public interface PrecomputedRecommendationsRepository {
+
+    /**
+     * @param deadline срок запроса или null; по его истечении бросается DeadlineExceededException
+     */
+    Optional<Entry> find(UUID userId, RequestDeadline deadline);
+
+    void saveAll(Map<UUID, List<RecommendationDTO>> recommendations, long rulesHash, long sweepId);
+
+    void deleteAll(Collection<UUID> userIds);
+
+    /**
+     * Последний незавершённый проход, если приложение было остановлено посреди него.
+     */
+    Optional<Sweep> findRunningSweep();
+
+    long startSweep(long rulesHash);
+
+    void saveProgress(long sweepId, UUID lastUserId, long usersDone);
+
+    void finishSweep(long sweepId, SweepStatus status);
+
+    record Entry(List<RecommendationDTO> recommendations, long rulesHash, Instant computedAt) {
+    }
+
+    record Sweep(long id, long rulesHash, Instant startedAt, UUID lastUserId, long usersDone) {
+    }
+
+    enum SweepStatus {
+        RUNNING,
+        FINISHED,
+        ABANDONED
+    }
+}
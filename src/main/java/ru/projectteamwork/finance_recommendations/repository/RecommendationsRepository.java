@@ -1,8 +1,29 @@
 package ru.projectteamwork.finance_recommendations.repository;
 
+import ru.projectteamwork.finance_recommendations.dto.RecommendationTrace;
+
+import java.util.Collection;
+import java.util.Map;
 import java.util.UUID;
 
 public interface RecommendationsRepository {
+    UserFactSnapshot loadFacts(UUID userId);
+
+    /**
+     * То же, что {@link #loadFacts(UUID)}, с записью в trace источника фактов, запроса и времени.
+     */
+    UserFactSnapshot loadFacts(UUID userId, RecommendationTrace trace);
+
+    /**
+     * То же, что {@link #loadFacts(UUID)}, но SQL-запрос ограничен оставшимся до deadline временем.
+     *
+     * @throws ru.projectteamwork.finance_recommendations.exception.DeadlineExceededException
+     *         если срок истёк до или во время запроса
+     */
+    UserFactSnapshot loadFacts(UUID userId, RequestDeadline deadline);
+
+    Map<UUID, UserFactSnapshot> loadFacts(Collection<UUID> userIds);
+
     Integer getSumIncomesByProductType(UUID userId, String productType);
 
     Integer getSumExpensesByProductType(UUID userId, String productType);
@@ -15,4 +36,6 @@ public interface RecommendationsRepository {
 
     void clearCaches();
 
+    void evictFacts(UUID userId);
+
 }
@@ -0,0 +1,40 @@
+package ru.projectteamwork.finance_recommendations.repository;
+
+import java.time.Duration;
+
+/**
+ * Момент, к которому запрос рекомендаций должен быть выполнен.
+ * Отсчитывается по {@link System#nanoTime()}; передаётся в загрузку фактов и в расчёт правил,
+ * null там означает «без ограничения».
+ */
+public final class RequestDeadline {
+
+    private final long deadlineNanos;
+
+    private RequestDeadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    public static RequestDeadline after(Duration budget) {
+        return new RequestDeadline(System.nanoTime() + budget.toNanos());
+    }
+
+    public boolean isExpired() {
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Оставшееся время в миллисекундах, не меньше 1: нулевой таймаут в JDBC означает «без ограничения».
+     */
+    public long remainingMillis() {
+        return Math.max(1, (deadlineNanos - System.nanoTime()) / 1_000_000);
+    }
+
+    /**
+     * Оставшееся время в целых секундах с округлением вверх — для {@link java.sql.Statement#setQueryTimeout(int)}
+     * там, где БД может быть не H2 и миллисекундный таймаут недоступен.
+     */
+    public int remainingSeconds() {
+        return (int) Math.min(Integer.MAX_VALUE, (remainingMillis() + 999) / 1000);
+    }
+}
@@ -0,0 +1,26 @@
+package ru.projectteamwork.finance_recommendations.repository;
+
+import ru.projectteamwork.finance_recommendations.evaluator.CompiledRule;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+public interface RuleAudienceRepository {
+
+    /**
+     * Вычисляет аудиторию правила одним SQL-запросом по всей БД транзакций, без расчёта по пользователям в Java.
+     *
+     * @param sampleSize сколько id пользователей вернуть в примере (по возрастанию id)
+     */
+    Audience simulate(CompiledRule rule, int sampleSize);
+
+    /**
+     * Передаёт снимки фактов всех пользователей по возрастанию id, включая пользователей без транзакций.
+     * Строки читаются однонаправленным курсором, в памяти одновременно находится снимок одного пользователя.
+     */
+    void forEachUserFacts(Consumer<UserFactSnapshot> handler);
+
+    record Audience(long users, List<UUID> sample) {
+    }
+}
@@ -0,0 +1,14 @@
+package ru.projectteamwork.finance_recommendations.repository;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+
+public interface RuleStatFlushRepository {
+    void addFireCounts(Map<UUID, Long> deltas);
+
+    /**
+     * Заводит счётчики встроенных правил и удаляет счётчики правил, которых больше нет в описании.
+     */
+    void registerBuiltInRules(Collection<UUID> ruleIds);
+}
@@ -0,0 +1,20 @@
+package ru.projectteamwork.finance_recommendations.repository;
+
+import java.util.UUID;
+
+public interface RuleStatQueryRepository {
+
+    /**
+     * Передаёт счётчики срабатываний правил по возрастанию id правила, начиная после курсора.
+     * Правила без статистики передаются с нулевым счётчиком. Встроенные правила передаются вместе с динамическими.
+     *
+     * @param after курсор — id последнего правила предыдущей страницы, либо null
+     * @param limit максимальное число строк, либо null без ограничения
+     */
+    void forEachFireCount(UUID after, Integer limit, FireCountHandler handler);
+
+    @FunctionalInterface
+    interface FireCountHandler {
+        void accept(UUID ruleId, long fireCount);
+    }
+}
@@ -0,0 +1,100 @@
+package ru.projectteamwork.finance_recommendations.repository;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Неизменяемый снимок агрегатов по транзакциям пользователя:
+ * сумма и количество для каждой пары (тип продукта, тип транзакции).
+ * Типы хранятся в верхнем регистре; ключи поиска приводятся к нему же, поэтому регистр аргументов не важен.
+ */
+public final class UserFactSnapshot {
+
+    private final UUID userId;
+    private final Map<String, Map<String, Fact>> facts;
+    private final Map<String, Integer> countsByProductType;
+
+    private UserFactSnapshot(UUID userId, Map<String, Map<String, Fact>> facts) {
+        this.userId = userId;
+        this.facts = facts;
+        Map<String, Integer> counts = new HashMap<>();
+        facts.forEach((productType, byTxType) -> {
+            int count = 0;
+            for (Fact fact : byTxType.values()) {
+                count += fact.count();
+            }
+            counts.put(productType, count);
+        });
+        this.countsByProductType = counts;
+    }
+
+    public static UserFactSnapshot empty(UUID userId) {
+        return new UserFactSnapshot(userId, Collections.emptyMap());
+    }
+
+    public static Builder builder(UUID userId) {
+        return new Builder(userId);
+    }
+
+    public UUID getUserId() {
+        return userId;
+    }
+
+    public boolean hasProductType(String productType) {
+        return countTransactions(productType) > 0;
+    }
+
+    public int countTransactions(String productType) {
+        Integer count = countsByProductType.get(key(productType));
+        return count != null ? count : 0;
+    }
+
+    public long sum(String productType, String txType) {
+        Map<String, Fact> byTxType = facts.get(key(productType));
+        if (byTxType == null) {
+            return 0L;
+        }
+        Fact fact = byTxType.get(key(txType));
+        return fact != null ? fact.sum() : 0L;
+    }
+
+    public long getSumIncomes(String productType) {
+        return sum(productType, "DEPOSIT");
+    }
+
+    public long getSumExpenses(String productType) {
+        return sum(productType, "WITHDRAW");
+    }
+
+    // для строки, уже записанной в верхнем регистре, toUpperCase возвращает её же без копирования
+    private static String key(String type) {
+        return type.toUpperCase(Locale.ROOT);
+    }
+
+    private record Fact(long sum, int count) {
+    }
+
+    public static final class Builder {
+        private final UUID userId;
+        private final Map<String, Map<String, Fact>> facts = new HashMap<>();
+
+        private Builder(UUID userId) {
+            this.userId = userId;
+        }
+
+        public Builder add(String productType, String txType, long sum, int count) {
+            String product = key(productType);
+            String tx = key(txType);
+            facts.computeIfAbsent(product, k -> new HashMap<>())
+                    .merge(tx, new Fact(sum, count), (a, b) -> new Fact(a.sum() + b.sum(), a.count() + b.count()));
+            return this;
+        }
+
+        public UserFactSnapshot build() {
+            return new UserFactSnapshot(userId, facts);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package ru.projectteamwork.finance_recommendations.repository;
+
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * В БД транзакций появились новые транзакции перечисленных пользователей;
+ * сохранённые для них факты и рекомендации устарели.
+ */
+public record UserFactsChanged(Set<UUID> userIds) {
+}
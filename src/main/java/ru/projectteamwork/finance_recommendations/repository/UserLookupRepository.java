@@ -1,8 +1,18 @@
 package ru.projectteamwork.finance_recommendations.repository;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 public interface UserLookupRepository {
     Optional<UUID> findSingleUserIdByFullName(String fullName);
+
+    List<UUID> findUserIdsByFullName(String fullName);
+
+    List<String> suggestFullNames(String prefix, int limit);
+
+    /**
+     * Страница id пользователей по возрастанию, начиная после курсора (null — с начала).
+     */
+    List<UUID> findUserIdsAfter(UUID after, int limit);
 }
@@ -0,0 +1,101 @@
+package ru.projectteamwork.finance_recommendations.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Неизменяемый индекс пользователей по полному имени «Имя Фамилия».
+ * Ключи нормализуются: пробелы схлопываются, регистр приводится к нижнему, «ё» заменяется на «е».
+ * Точный поиск выполняется по хеш-таблице, поиск по префиксу — по отсортированной карте ключей.
+ */
+public final class UserNameIndex {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final Map<String, List<UUID>> idsByName;
+    private final NavigableMap<String, String> displayNames;
+
+    private UserNameIndex(Map<String, List<UUID>> idsByName, NavigableMap<String, String> displayNames) {
+        this.idsByName = idsByName;
+        this.displayNames = displayNames;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static String normalize(String fullName) {
+        if (fullName == null) {
+            return "";
+        }
+        String collapsed = WHITESPACE.matcher(fullName.trim()).replaceAll(" ");
+        return collapsed.toLowerCase(Locale.ROOT).replace('ё', 'е');
+    }
+
+    public int size() {
+        return idsByName.size();
+    }
+
+    /**
+     * Все пользователи с данным именем; больше одного элемента означает неоднозначное имя.
+     */
+    public List<UUID> find(String fullName) {
+        List<UUID> ids = idsByName.get(normalize(fullName));
+        return ids != null ? ids : List.of();
+    }
+
+    /**
+     * Имена, начинающиеся с данного префикса, в алфавитном порядке нормализованных ключей.
+     */
+    public List<String> suggest(String prefix, int limit) {
+        String key = normalize(prefix);
+        if (key.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        List<String> result = new ArrayList<>(limit);
+        for (Map.Entry<String, String> entry : displayNames.tailMap(key, true).entrySet()) {
+            if (!entry.getKey().startsWith(key) || result.size() >= limit) {
+                break;
+            }
+            result.add(entry.getValue());
+        }
+        return result;
+    }
+
+    public static final class Builder {
+        private final Map<String, List<UUID>> idsByName = new HashMap<>();
+        private final NavigableMap<String, String> displayNames = new TreeMap<>();
+
+        private Builder() {
+        }
+
+        public Builder add(UUID id, String firstName, String lastName) {
+            String displayName = (nullToEmpty(firstName) + " " + nullToEmpty(lastName)).trim();
+            String key = normalize(displayName);
+            if (key.isEmpty()) {
+                return this;
+            }
+            idsByName.computeIfAbsent(key, k -> new ArrayList<>(1)).add(id);
+            displayNames.putIfAbsent(key, displayName);
+            return this;
+        }
+
+        public UserNameIndex build() {
+            Map<String, List<UUID>> frozen = new HashMap<>(idsByName.size() * 2);
+            idsByName.forEach((key, ids) -> frozen.put(key, List.copyOf(ids)));
+            return new UserNameIndex(frozen, Collections.unmodifiableNavigableMap(displayNames));
+        }
+
+        private static String nullToEmpty(String value) {
+            return value != null ? value : "";
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package ru.projectteamwork.finance_recommendations.repository.impl;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.projectteamwork.finance_recommendations.repository.UserFactSnapshot;
+import ru.projectteamwork.finance_recommendations.repository.UserFactsChanged;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Колоночная копия агрегатов БД транзакций в памяти.
+ * Для каждого пользователя хранятся суммы и количества по всем парам
+ * (тип продукта, тип транзакции) в плоских массивах примитивов; индекс пользователя
+ * находится по UUID через открытую адресацию. Данные перечитываются целиком по расписанию
+ * и публикуются атомарной заменой ссылки.
+ * Между перезагрузками факты пользователей из {@link UserFactsChanged} перечитываются SQL-запросом
+ * и хранятся поверх колонок, пока их не заменит следующая полная загрузка.
+ */
+@Component
+@ConditionalOnProperty(name = "recommendations.engine.mode", havingValue = "columnar")
+public class ColumnarFactStore {
+
+    private static final String AGGREGATE_SQL =
+            "SELECT t.user_id, p.type, t.type, COALESCE(SUM(t.amount), 0), COUNT(*) " +
+                    "FROM transactions t INNER JOIN products p ON t.product_id = p.id " +
+                    "GROUP BY t.user_id, p.type, t.type";
+
+    private static final String PATCH_SQL =
+            "SELECT t.user_id, p.type, t.type, COALESCE(SUM(t.amount), 0), COUNT(*) " +
+                    "FROM transactions t INNER JOIN products p ON t.product_id = p.id " +
+                    "WHERE t.user_id IN (%s) GROUP BY t.user_id, p.type, t.type";
+
+    private static final int PATCH_CHUNK = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int fetchSize;
+    private final Logger logger = LoggerFactory.getLogger(ColumnarFactStore.class);
+
+    private volatile Columns columns;
+    // факты, перечитанные после изменений; facts == null — перечитать не удалось, нужен SQL-запрос
+    private final ConcurrentHashMap<UUID, Patch> patches = new ConcurrentHashMap<>();
+    private final AtomicLong patchSequence = new AtomicLong();
+
+    public ColumnarFactStore(@Qualifier("recommendationsJdbcTemplate") JdbcTemplate jdbcTemplate,
+                             @Value("${recommendations.engine.columnar.fetch-size:10000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.fetchSize = fetchSize;
+    }
+
+    @PostConstruct
+    public void init() {
+        refresh();
+    }
+
+    @Scheduled(fixedDelayString = "${recommendations.engine.columnar.refresh-interval-ms:600000}",
+            initialDelayString = "${recommendations.engine.columnar.refresh-interval-ms:600000}")
+    public void refresh() {
+        long started = System.nanoTime();
+        long sequence = patchSequence.get();
+        try {
+            Columns loaded = load();
+            columns = loaded;
+            // изменения, о которых узнали уже после начала загрузки, могли в неё не попасть
+            patches.values().removeIf(patch -> patch.sequence() <= sequence);
+            logger.info("Колоночное хранилище загружено: users={}, slots={}, {} ms",
+                    loaded.userCount, loaded.slots, (System.nanoTime() - started) / 1_000_000);
+        } catch (DataAccessException e) {
+            logger.error("Не удалось загрузить колоночное хранилище, используются SQL-запросы", e);
+        }
+    }
+
+    public boolean isLoaded() {
+        return columns != null;
+    }
+
+    /**
+     * Возвращает снимок фактов пользователя или {@code null}, если хранилище ещё не загружено.
+     */
+    public UserFactSnapshot find(UUID userId) {
+        Columns current = columns;
+        if (current == null) {
+            return null;
+        }
+        Patch patch = patches.get(userId);
+        if (patch != null) {
+            return patch.facts();
+        }
+        return current.snapshot(userId);
+    }
+
+    public Map<UUID, UserFactSnapshot> findAll(List<UUID> userIds) {
+        Columns current = columns;
+        if (current == null) {
+            return null;
+        }
+        Map<UUID, UserFactSnapshot> result = new HashMap<>(userIds.size() * 2);
+        for (UUID userId : userIds) {
+            Patch patch = patches.get(userId);
+            if (patch != null && patch.facts() == null) {
+                return null;
+            }
+            result.put(userId, patch != null ? patch.facts() : current.snapshot(userId));
+        }
+        return result;
+    }
+
+    /**
+     * Перечитывает факты изменившихся пользователей раньше остальных обработчиков события,
+     * чтобы сброшенные ими кеши не заполнились снова устаревшими колонками.
+     */
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onUserFactsChanged(UserFactsChanged event) {
+        if (columns == null) {
+            return;
+        }
+        long sequence = patchSequence.incrementAndGet();
+        List<UUID> ids = new ArrayList<>(event.userIds());
+        Map<UUID, UserFactSnapshot.Builder> builders = new HashMap<>(ids.size() * 2);
+        for (UUID id : ids) {
+            builders.put(id, UserFactSnapshot.builder(id));
+        }
+        try {
+            for (int from = 0; from < ids.size(); from += PATCH_CHUNK) {
+                List<UUID> chunk = ids.subList(from, Math.min(from + PATCH_CHUNK, ids.size()));
+                String sql = String.format(PATCH_SQL, String.join(",", Collections.nCopies(chunk.size(), "?")));
+                jdbcTemplate.query(sql, rs -> {
+                    builders.get(UUID.fromString(rs.getString(1)))
+                            .add(rs.getString(2), rs.getString(3), rs.getLong(4), rs.getInt(5));
+                }, chunk.toArray());
+            }
+        } catch (DataAccessException e) {
+            logger.error("Не удалось перечитать факты изменившихся пользователей, для них используются SQL-запросы: users={}",
+                    ids.size(), e);
+            ids.forEach(id -> patches.put(id, new Patch(sequence, null)));
+            return;
+        }
+        builders.forEach((id, builder) -> patches.put(id, new Patch(sequence, builder.build())));
+        logger.debug("Колоночное хранилище: перечитаны факты {} пользователей", ids.size());
+    }
+
+    private Columns load() {
+        String[] productTypes = distinctTypes("SELECT DISTINCT type FROM products");
+        String[] txTypes = distinctTypes("SELECT DISTINCT type FROM transactions");
+        Integer users = jdbcTemplate.queryForObject("SELECT COUNT(DISTINCT user_id) FROM transactions", Integer.class);
+
+        ColumnsBuilder builder = new ColumnsBuilder(productTypes, txTypes, users != null ? users : 0);
+        jdbcTemplate.query(con -> {
+            var ps = con.prepareStatement(AGGREGATE_SQL);
+            ps.setFetchSize(fetchSize);
+            return ps;
+        }, rs -> {
+            builder.add(UUID.fromString(rs.getString(1)), rs.getString(2), rs.getString(3), rs.getLong(4), rs.getInt(5));
+        });
+        return builder.build();
+    }
+
+    private String[] distinctTypes(String sql) {
+        return jdbcTemplate.queryForList(sql, String.class).stream()
+                .filter(type -> type != null)
+                .map(type -> type.toUpperCase(Locale.ROOT))
+                .distinct()
+                .toArray(String[]::new);
+    }
+
+    private record Patch(long sequence, UserFactSnapshot facts) {
+    }
+
+    private static final class Columns {
+        private final String[] productTypes;
+        private final String[] txTypes;
+        private final int slots;
+        private final int userCount;
+        private final long[] sums;
+        private final int[] counts;
+        private final UuidIndex index;
+
+        private Columns(String[] productTypes, String[] txTypes, int userCount,
+                        long[] sums, int[] counts, UuidIndex index) {
+            this.productTypes = productTypes;
+            this.txTypes = txTypes;
+            this.slots = productTypes.length * txTypes.length;
+            this.userCount = userCount;
+            this.sums = sums;
+            this.counts = counts;
+            this.index = index;
+        }
+
+        private UserFactSnapshot snapshot(UUID userId) {
+            int user = index.get(userId);
+            if (user < 0) {
+                return UserFactSnapshot.empty(userId);
+            }
+            UserFactSnapshot.Builder builder = UserFactSnapshot.builder(userId);
+            int base = user * slots;
+            for (int p = 0; p < productTypes.length; p++) {
+                for (int t = 0; t < txTypes.length; t++) {
+                    int slot = base + p * txTypes.length + t;
+                    if (counts[slot] != 0) {
+                        builder.add(productTypes[p], txTypes[t], sums[slot], counts[slot]);
+                    }
+                }
+            }
+            return builder.build();
+        }
+    }
+
+    private static final class ColumnsBuilder {
+        private final String[] productTypes;
+        private final String[] txTypes;
+        private final Map<String, Integer> productIndex = new HashMap<>();
+        private final Map<String, Integer> txIndex = new HashMap<>();
+        private final int slots;
+        private final UuidIndex index;
+        private long[] sums;
+        private int[] counts;
+        private int userCount;
+
+        private ColumnsBuilder(String[] productTypes, String[] txTypes, int expectedUsers) {
+            this.productTypes = productTypes;
+            this.txTypes = txTypes;
+            for (int i = 0; i < productTypes.length; i++) {
+                productIndex.put(productTypes[i], i);
+            }
+            for (int i = 0; i < txTypes.length; i++) {
+                txIndex.put(txTypes[i], i);
+            }
+            this.slots = productTypes.length * txTypes.length;
+            int capacity = Math.max(expectedUsers, 16);
+            this.index = new UuidIndex(capacity);
+            this.sums = new long[capacity * slots];
+            this.counts = new int[capacity * slots];
+        }
+
+        private void add(UUID userId, String productType, String txType, long sum, int count) {
+            if (productType == null || txType == null) {
+                return;
+            }
+            Integer p = productIndex.get(productType.toUpperCase(Locale.ROOT));
+            Integer t = txIndex.get(txType.toUpperCase(Locale.ROOT));
+            if (p == null || t == null) {
+                return;
+            }
+            int user = index.get(userId);
+            if (user < 0) {
+                user = userCount++;
+                index.put(userId, user);
+                ensureCapacity(userCount);
+            }
+            int slot = user * slots + p * txTypes.length + t;
+            sums[slot] += sum;
+            counts[slot] += count;
+        }
+
+        private void ensureCapacity(int users) {
+            if (users * slots > sums.length) {
+                int capacity = Math.max(users, (sums.length / Math.max(slots, 1)) * 3 / 2);
+                sums = Arrays.copyOf(sums, capacity * slots);
+                counts = Arrays.copyOf(counts, capacity * slots);
+            }
+        }
+
+        private Columns build() {
+            return new Columns(productTypes, txTypes, userCount,
+                    Arrays.copyOf(sums, userCount * slots), Arrays.copyOf(counts, userCount * slots), index);
+        }
+    }
+
+    /**
+     * Хеш-таблица UUID → индекс пользователя с открытой адресацией на примитивных массивах.
+     */
+    private static final class UuidIndex {
+        private long[] most;
+        private long[] least;
+        private int[] values;
+        private int size;
+
+        private UuidIndex(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) << 1;
+            allocate(capacity);
+        }
+
+        private void allocate(int capacity) {
+            most = new long[capacity];
+            least = new long[capacity];
+            values = new int[capacity];
+            Arrays.fill(values, -1);
+        }
+
+        private int get(UUID key) {
+            long msb = key.getMostSignificantBits();
+            long lsb = key.getLeastSignificantBits();
+            int mask = values.length - 1;
+            for (int slot = hash(msb, lsb) & mask; ; slot = (slot + 1) & mask) {
+                if (values[slot] < 0) {
+                    return -1;
+                }
+                if (most[slot] == msb && least[slot] == lsb) {
+                    return values[slot];
+                }
+            }
+        }
+
+        private void put(UUID key, int value) {
+            if ((size + 1) * 2 > values.length) {
+                rehash(values.length * 2);
+            }
+            insert(key.getMostSignificantBits(), key.getLeastSignificantBits(), value);
+            size++;
+        }
+
+        private void insert(long msb, long lsb, int value) {
+            int mask = values.length - 1;
+            int slot = hash(msb, lsb) & mask;
+            while (values[slot] >= 0) {
+                slot = (slot + 1) & mask;
+            }
+            most[slot] = msb;
+            least[slot] = lsb;
+            values[slot] = value;
+        }
+
+        private void rehash(int capacity) {
+            long[] oldMost = most;
+            long[] oldLeast = least;
+            int[] oldValues = values;
+            allocate(capacity);
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] >= 0) {
+                    insert(oldMost[i], oldLeast[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int hash(long msb, long lsb) {
+            long h = msb ^ lsb;
+            h ^= (h >>> 33);
+            h *= 0xff51afd7ed558ccdL;
+            h ^= (h >>> 33);
+            return (int) h;
+        }
+    }
+}
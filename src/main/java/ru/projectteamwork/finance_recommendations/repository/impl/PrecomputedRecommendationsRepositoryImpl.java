@@ -0,0 +1,177 @@
+package ru.projectteamwork.finance_recommendations.repository.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.projectteamwork.finance_recommendations.dto.RecommendationDTO;
+import ru.projectteamwork.finance_recommendations.exception.DeadlineExceededException;
+import ru.projectteamwork.finance_recommendations.repository.PrecomputedRecommendationsRepository;
+import ru.projectteamwork.finance_recommendations.repository.RequestDeadline;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public class PrecomputedRecommendationsRepositoryImpl implements PrecomputedRecommendationsRepository {
+
+    private static final String FIND_SQL =
+            "SELECT recommendations, rules_hash, computed_at FROM precomputed_recommendation WHERE user_id = ?";
+
+    private static final String UPSERT_SQL = """
+            MERGE INTO precomputed_recommendation p
+            USING (SELECT CAST(? AS UUID) AS user_id, CAST(? AS TEXT) AS recommendations, CAST(? AS BIGINT) AS rules_hash,
+                          CAST(? AS BIGINT) AS sweep_id, CAST(? AS TIMESTAMP) AS computed_at) d
+            ON p.user_id = d.user_id
+            WHEN MATCHED THEN UPDATE SET recommendations = d.recommendations, rules_hash = d.rules_hash,
+                                         sweep_id = d.sweep_id, computed_at = d.computed_at
+            WHEN NOT MATCHED THEN INSERT (user_id, recommendations, rules_hash, sweep_id, computed_at)
+                VALUES (d.user_id, d.recommendations, d.rules_hash, d.sweep_id, d.computed_at)
+            """;
+
+    private static final String DELETE_SQL = "DELETE FROM precomputed_recommendation WHERE user_id IN (%s)";
+
+    private static final String RUNNING_SWEEP_SQL =
+            "SELECT id, rules_hash, started_at, last_user_id, users_done FROM precompute_sweep " +
+                    "WHERE status = 'RUNNING' ORDER BY id DESC LIMIT 1";
+
+    private static final String START_SWEEP_SQL =
+            "INSERT INTO precompute_sweep (status, rules_hash, started_at, users_done) VALUES ('RUNNING', ?, ?, 0)";
+
+    private static final String PROGRESS_SQL =
+            "UPDATE precompute_sweep SET last_user_id = ?, users_done = ? WHERE id = ?";
+
+    private static final String FINISH_SQL =
+            "UPDATE precompute_sweep SET status = ?, finished_at = ? WHERE id = ?";
+
+    private static final int DELETE_CHUNK_SIZE = 500;
+
+    private final JdbcTemplate jdbc;
+    private final ObjectMapper objectMapper;
+
+    public PrecomputedRecommendationsRepositoryImpl(@Qualifier("defaultJdbcTemplate") JdbcTemplate jdbc,
+                                                    ObjectMapper objectMapper) {
+        this.jdbc = jdbc;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * БД правил может быть не H2, поэтому срок задаётся стандартным таймаутом JDBC в целых секундах.
+     */
+    @Override
+    public Optional<Entry> find(UUID userId, RequestDeadline deadline) {
+        if (deadline != null && deadline.isExpired()) {
+            throw new DeadlineExceededException("Срок запроса истёк до чтения заранее вычисленных рекомендаций");
+        }
+        try {
+            List<Entry> entries = jdbc.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(FIND_SQL);
+                statement.setObject(1, userId);
+                if (deadline != null) {
+                    statement.setQueryTimeout(deadline.remainingSeconds());
+                }
+                return statement;
+            }, (rs, i) -> new Entry(
+                    parse(rs.getString(1)),
+                    rs.getLong(2),
+                    rs.getTimestamp(3).toInstant()
+            ));
+            return entries.stream().findFirst();
+        } catch (QueryTimeoutException e) {
+            throw new DeadlineExceededException("Срок запроса истёк при чтении заранее вычисленных рекомендаций", e);
+        }
+    }
+
+    @Override
+    @Transactional
+    public void saveAll(Map<UUID, List<RecommendationDTO>> recommendations, long rulesHash, long sweepId) {
+        Timestamp now = Timestamp.from(Instant.now());
+        List<Object[]> args = new ArrayList<>(recommendations.size());
+        recommendations.forEach((userId, list) ->
+                args.add(new Object[]{userId, serialize(list), rulesHash, sweepId, now}));
+        jdbc.batchUpdate(UPSERT_SQL, args);
+    }
+
+    @Override
+    public void deleteAll(Collection<UUID> userIds) {
+        List<UUID> ids = new ArrayList<>(userIds);
+        for (int from = 0; from < ids.size(); from += DELETE_CHUNK_SIZE) {
+            List<UUID> chunk = ids.subList(from, Math.min(from + DELETE_CHUNK_SIZE, ids.size()));
+            String sql = String.format(DELETE_SQL, String.join(",", Collections.nCopies(chunk.size(), "?")));
+            jdbc.update(sql, chunk.toArray());
+        }
+    }
+
+    @Override
+    public Optional<Sweep> findRunningSweep() {
+        List<Sweep> sweeps = jdbc.query(RUNNING_SWEEP_SQL, (rs, i) -> new Sweep(
+                rs.getLong(1),
+                rs.getLong(2),
+                rs.getTimestamp(3).toInstant(),
+                rs.getObject(4, UUID.class),
+                rs.getLong(5)
+        ));
+        return sweeps.stream().findFirst();
+    }
+
+    @Override
+    public long startSweep(long rulesHash) {
+        GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbc.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(START_SWEEP_SQL, new String[]{"id"});
+            statement.setLong(1, rulesHash);
+            statement.setTimestamp(2, Timestamp.from(Instant.now()));
+            return statement;
+        }, keyHolder);
+        return keyHolder.getKey().longValue();
+    }
+
+    @Override
+    public void saveProgress(long sweepId, UUID lastUserId, long usersDone) {
+        jdbc.update(PROGRESS_SQL, lastUserId, usersDone, sweepId);
+    }
+
+    @Override
+    public void finishSweep(long sweepId, SweepStatus status) {
+        jdbc.update(FINISH_SQL, status.name(), Timestamp.from(Instant.now()), sweepId);
+    }
+
+    private String serialize(List<RecommendationDTO> recommendations) {
+        ArrayNode array = objectMapper.createArrayNode();
+        for (RecommendationDTO recommendation : recommendations) {
+            array.addObject()
+                    .put("name", recommendation.getName())
+                    .put("id", recommendation.getId())
+                    .put("text", recommendation.getText());
+        }
+        return array.toString();
+    }
+
+    private List<RecommendationDTO> parse(String json) {
+        try {
+            JsonNode array = objectMapper.readTree(json);
+            List<RecommendationDTO> recommendations = new ArrayList<>(array.size());
+            for (JsonNode node : array) {
+                recommendations.add(new RecommendationDTO(
+                        node.path("name").asText(), node.path("id").asText(), node.path("text").asText()));
+            }
+            return recommendations;
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Повреждены сохранённые рекомендации", e);
+        }
+    }
+}
@@ -1,92 +1,242 @@
 package ru.projectteamwork.finance_recommendations.repository.impl;
 
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
+import ru.projectteamwork.finance_recommendations.dto.RecommendationTrace;
 import ru.projectteamwork.finance_recommendations.exception.DataAccessLayerException;
+import ru.projectteamwork.finance_recommendations.exception.DeadlineExceededException;
 import ru.projectteamwork.finance_recommendations.repository.RecommendationsRepository;
+import ru.projectteamwork.finance_recommendations.repository.RequestDeadline;
+import ru.projectteamwork.finance_recommendations.repository.UserFactSnapshot;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.TimeUnit;
 
 @Repository
 public class RecommendationsRepositoryImpl implements RecommendationsRepository {
+    private static final String FACTS_SQL =
+            "SELECT p.type, t.type, COALESCE(SUM(t.amount), 0), COUNT(*) " +
+                    "FROM transactions t INNER JOIN products p ON t.product_id = p.id " +
+                    "WHERE t.user_id = ? " +
+                    "GROUP BY p.type, t.type";
+
+    private static final String BATCH_FACTS_SQL =
+            "SELECT t.user_id, p.type, t.type, COALESCE(SUM(t.amount), 0), COUNT(*) " +
+                    "FROM transactions t INNER JOIN products p ON t.product_id = p.id " +
+                    "WHERE t.user_id IN (%s) " +
+                    "GROUP BY t.user_id, p.type, t.type";
+
     private final JdbcTemplate jdbcTemplate;
+    private final int sqlChunkSize;
     private final Logger logger = LoggerFactory.getLogger(RecommendationsRepositoryImpl.class);
 
-    private final Cache<String, Integer> sumCache =
-            Caffeine.newBuilder().maximumSize(10_000).expireAfterWrite(10, TimeUnit.MINUTES).build();
-    private final Cache<String, Boolean> existsCache =
-            Caffeine.newBuilder().maximumSize(10_000).expireAfterWrite(10, TimeUnit.MINUTES).build();
-    private final Cache<String, Integer> countCache =
-            Caffeine.newBuilder().maximumSize(10_000).expireAfterWrite(10, TimeUnit.MINUTES).build();
+    private final Cache factsCache;
+    private final ColumnarFactStore columnarStore;
+    private final UserFactRollup rollup;
+    private final Timer factsQueryTimer;
+    private final Timer batchFactsQueryTimer;
 
-    public RecommendationsRepositoryImpl(@Qualifier("recommendationsJdbcTemplate") JdbcTemplate jdbcTemplate) {
+    public RecommendationsRepositoryImpl(@Qualifier("recommendationsJdbcTemplate") JdbcTemplate jdbcTemplate,
+                                         CacheManager cacheManager,
+                                         ObjectProvider<ColumnarFactStore> columnarStore,
+                                         ObjectProvider<UserFactRollup> rollup,
+                                         MeterRegistry meterRegistry,
+                                         @Value("${recommendations.batch.sql-chunk-size:500}") int sqlChunkSize) {
         this.jdbcTemplate = jdbcTemplate;
+        this.factsCache = cacheManager.getCache("userFactsCache");
+        this.columnarStore = columnarStore.getIfAvailable();
+        this.rollup = rollup.getIfAvailable();
+        this.sqlChunkSize = sqlChunkSize;
+        this.factsQueryTimer = Timer.builder("recommendations.repository.query")
+                .description("Время SQL-запросов к БД транзакций")
+                .tag("query", "user_facts")
+                .register(meterRegistry);
+        this.batchFactsQueryTimer = Timer.builder("recommendations.repository.query")
+                .description("Время SQL-запросов к БД транзакций")
+                .tag("query", "user_facts_batch")
+                .register(meterRegistry);
     }
 
+    @Override
+    public UserFactSnapshot loadFacts(UUID userId) {
+        return loadFacts(userId, null, null);
+    }
 
     @Override
-    @Cacheable(cacheNames = "recommendationsCache", key = "#userId + '_' + #productType + '_' + #txType")
-    public int sumAmountByProductAndTxType(UUID userId, String productType, String txType) {
-        final String key = (userId + " " + productType + " " + txType).toUpperCase();
+    public UserFactSnapshot loadFacts(UUID userId, RecommendationTrace trace) {
+        return loadFacts(userId, trace, null);
+    }
+
+    @Override
+    public UserFactSnapshot loadFacts(UUID userId, RequestDeadline deadline) {
+        return loadFacts(userId, null, deadline);
+    }
+
+    private UserFactSnapshot loadFacts(UUID userId, RecommendationTrace trace, RequestDeadline deadline) {
+        long started = trace != null ? System.nanoTime() : 0;
+        if (columnarStore != null) {
+            UserFactSnapshot inMemory = columnarStore.find(userId);
+            if (inMemory != null) {
+                if (trace != null) {
+                    trace.facts("columnar", null, System.nanoTime() - started);
+                }
+                return inMemory;
+            }
+        }
+        UserFactSnapshot cached = factsCache.get(userId, UserFactSnapshot.class);
+        if (cached != null) {
+            if (trace != null) {
+                trace.facts("cache", null, System.nanoTime() - started);
+            }
+            return cached;
+        }
+        if (rollup != null) {
+            UserFactSnapshot rolledUp = rollup.find(userId, deadline);
+            if (rolledUp != null) {
+                factsCache.put(userId, rolledUp);
+                if (trace != null) {
+                    trace.facts("rollup", UserFactRollup.rollupSql(1), System.nanoTime() - started);
+                }
+                return rolledUp;
+            }
+        }
+        if (deadline != null && deadline.isExpired()) {
+            throw new DeadlineExceededException("Срок запроса истёк до загрузки агрегатов транзакций");
+        }
         try {
-            return sumCache.get(key, k -> {
-                final String sql =
-                        "SELECT COALESCE(SUM(t.amount), 0) " +
-                                "FROM transactions t INNER JOIN products p ON t.product_id = p.id " +
-                                "WHERE t.user_id = ? AND t.type = ? AND p.type = ?";
-                Integer sum = jdbcTemplate.queryForObject(sql, Integer.class, userId, txType, productType);
-                return sum != null ? sum : 0;
-            });
+            UserFactSnapshot facts = deadline != null ? queryFacts(userId, deadline) : queryFacts(userId);
+            factsCache.put(userId, facts);
+            if (trace != null) {
+                trace.facts("sql", FACTS_SQL, System.nanoTime() - started);
+            }
+            return facts;
+        } catch (QueryTimeoutException e) {
+            logger.debug("Загрузка агрегатов транзакций прервана по сроку запроса: userId={}", userId);
+            throw new DeadlineExceededException("Срок запроса истёк при загрузке агрегатов транзакций", e);
         } catch (DataAccessException e) {
-            logger.error("Ошибка БД при суммировании: userId={}, productType={}, txType={}", userId, productType, txType);
-            throw new DataAccessLayerException("Ошибка суммирования транзакций", e);
+            logger.error("Ошибка БД при загрузке агрегатов транзакций: userId={}", userId);
+            throw new DataAccessLayerException("Ошибка загрузки агрегатов транзакций", e);
         }
     }
 
     @Override
-    @Cacheable(cacheNames = "recommendationsCache", key = "#userId + '_' + #productType")
-    public boolean userHasProductType(UUID userId, String productType) {
-        final String key = (userId + " " + productType).toUpperCase();
+    public Map<UUID, UserFactSnapshot> loadFacts(Collection<UUID> userIds) {
+        if (userIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        List<UUID> ids = new ArrayList<>(userIds);
+        if (columnarStore != null) {
+            Map<UUID, UserFactSnapshot> inMemory = columnarStore.findAll(ids);
+            if (inMemory != null) {
+                return inMemory;
+            }
+        }
+        Map<UUID, UserFactSnapshot> rolledUp = rollup != null ? rollup.findAll(ids) : Collections.emptyMap();
+        if (!rolledUp.isEmpty()) {
+            // SQL-запросом догружаются только пользователи, которых ещё нет в агрегатах
+            List<UUID> missing = new ArrayList<>(ids.size() - rolledUp.size());
+            for (UUID id : ids) {
+                if (!rolledUp.containsKey(id)) {
+                    missing.add(id);
+                }
+            }
+            ids = missing;
+        }
+        Map<UUID, UserFactSnapshot.Builder> builders = new HashMap<>();
+        for (UUID id : ids) {
+            builders.putIfAbsent(id, UserFactSnapshot.builder(id));
+        }
         try {
-            return existsCache.get(key, k -> {
-                String sql = "SELECT EXISTS (SELECT 1 " +
-                        "FROM transactions t  INNER JOIN products p ON t.product_id = p.id " +
-                        "WHERE t.user_id = ? AND p.type = ?)";
-                Boolean exists = jdbcTemplate.queryForObject(sql, Boolean.class, userId, productType);
-                return exists != null ? exists : false;
-            });
+            for (int from = 0; from < ids.size(); from += sqlChunkSize) {
+                List<UUID> chunk = ids.subList(from, Math.min(from + sqlChunkSize, ids.size()));
+                String sql = String.format(BATCH_FACTS_SQL, String.join(",", Collections.nCopies(chunk.size(), "?")));
+                batchFactsQueryTimer.record(() -> jdbcTemplate.query(sql, rs -> {
+                    UUID userId = UUID.fromString(rs.getString(1));
+                    builders.get(userId).add(rs.getString(2), rs.getString(3), rs.getLong(4), rs.getInt(5));
+                }, chunk.toArray()));
+            }
         } catch (DataAccessException e) {
-            logger.error("Возникла ошибка при обращении к базе данных для получения логического значения " +
-                    "с данными userId={} и productType={}", userId, productType);
-            throw new DataAccessLayerException("Ошибка получения логического значения при обращении к базе данных", e);
+            logger.error("Ошибка БД при пакетной загрузке агрегатов транзакций: users={}", ids.size());
+            throw new DataAccessLayerException("Ошибка пакетной загрузки агрегатов транзакций", e);
         }
+        Map<UUID, UserFactSnapshot> result = new HashMap<>((builders.size() + rolledUp.size()) * 2);
+        result.putAll(rolledUp);
+        builders.forEach((id, builder) -> result.put(id, builder.build()));
+        return result;
+    }
+
+    private UserFactSnapshot queryFacts(UUID userId) {
+        UserFactSnapshot.Builder builder = UserFactSnapshot.builder(userId);
+        factsQueryTimer.record(() -> jdbcTemplate.query(FACTS_SQL, rs -> {
+            builder.add(rs.getString(1), rs.getString(2), rs.getLong(3), rs.getInt(4));
+        }, userId));
+        return builder.build();
+    }
+
+    /**
+     * Таймаут задаётся командой H2 в миллисекундах: {@link java.sql.Statement#setQueryTimeout(int)} принимает
+     * только целые секунды. После запроса таймаут соединения сбрасывается, прежде чем оно вернётся в пул.
+     */
+    private UserFactSnapshot queryFacts(UUID userId, RequestDeadline deadline) {
+        UserFactSnapshot.Builder builder = UserFactSnapshot.builder(userId);
+        factsQueryTimer.record(() -> jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            // ожидание соединения из пула таймаутом запроса не ограничено
+            if (deadline.isExpired()) {
+                throw new DeadlineExceededException("Срок запроса истёк в ожидании соединения с БД транзакций");
+            }
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET QUERY_TIMEOUT " + deadline.remainingMillis());
+            }
+            try (PreparedStatement statement = connection.prepareStatement(FACTS_SQL)) {
+                statement.setObject(1, userId);
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        builder.add(rs.getString(1), rs.getString(2), rs.getLong(3), rs.getInt(4));
+                    }
+                }
+            } finally {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("SET QUERY_TIMEOUT 0");
+                }
+            }
+            return null;
+        }));
+        return builder.build();
+    }
+
+    @Override
+    public int sumAmountByProductAndTxType(UUID userId, String productType, String txType) {
+        return Math.toIntExact(loadFacts(userId).sum(productType, txType));
+    }
+
+    @Override
+    public boolean userHasProductType(UUID userId, String productType) {
+        return loadFacts(userId).hasProductType(productType);
     }
 
     @Override
-    @Cacheable(cacheNames = "recommendationsCache", key = "#userId + '_' + #productType")
     public int countTransactionsByProductType(UUID userId, String productType) {
-        final String key = (userId + " " + productType).toUpperCase();
-        try {
-            return countCache.get(key, k -> {
-                final String sql =
-                        "SELECT COUNT(*) " +
-                                "FROM transactions t INNER JOIN products p ON t.product_id = p.id " +
-                                "WHERE t.user_id = ? AND p.type = ?";
-                Integer count = jdbcTemplate.queryForObject(sql, Integer.class, userId, productType);
-                return count != null ? count : 0;
-            });
-        } catch (DataAccessException e) {
-            logger.error("Возникла ошибка при обращении к базе данных для подсчета транзакций: userId={}, productType={}", userId, productType);
-            throw new DataAccessLayerException("Ошибка подсчёта транзакций", e);
-        }
+        return loadFacts(userId).countTransactions(productType);
     }
 
     @Override
@@ -101,15 +251,12 @@ public class RecommendationsRepositoryImpl implements RecommendationsRepository
 
     @Override
     public void clearCaches() {
-        long s1 = sumCache.estimatedSize();
-        long s2 = existsCache.estimatedSize();
-        long s3 = countCache.estimatedSize();
-
-        sumCache.invalidateAll();
-        existsCache.invalidateAll();
-        countCache.invalidateAll();
+        factsCache.clear();
+        logger.info("Recommendation caches cleared (userFactsCache)");
+    }
 
-        logger.info("Recommendation caches cleared (sum={}, exists={}, count={})", s1, s2, s3);
+    @Override
+    public void evictFacts(UUID userId) {
+        factsCache.evict(userId);
     }
 }
-
@@ -0,0 +1,175 @@
+package ru.projectteamwork.finance_recommendations.repository.impl;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.projectteamwork.finance_recommendations.evaluator.ActiveUserOfPredicate;
+import ru.projectteamwork.finance_recommendations.evaluator.CompiledRule;
+import ru.projectteamwork.finance_recommendations.evaluator.FactPredicate;
+import ru.projectteamwork.finance_recommendations.evaluator.SumComparePredicate;
+import ru.projectteamwork.finance_recommendations.evaluator.SumPairComparePredicate;
+import ru.projectteamwork.finance_recommendations.evaluator.UserOfPredicate;
+import ru.projectteamwork.finance_recommendations.repository.RuleAudienceRepository;
+import ru.projectteamwork.finance_recommendations.repository.UserFactSnapshot;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Переводит условия правила в условия HAVING над агрегатами транзакций, сгруппированными по пользователю.
+ * Каждое условие вычисляется так же, как соответствующий {@link FactPredicate} над {@link UserFactSnapshot}:
+ * типы сравниваются в верхнем регистре, отсутствующие суммы равны нулю.
+ */
+@Repository
+public class RuleAudienceRepositoryImpl implements RuleAudienceRepository {
+
+    private static final String MATCHED_SQL =
+            "SELECT t.user_id AS user_id " +
+                    "FROM transactions t INNER JOIN products p ON t.product_id = p.id " +
+                    "GROUP BY t.user_id " +
+                    "HAVING %s";
+
+    // пользователи без транзакций: их снимок пуст, поэтому они подходят правилу либо все, либо ни один
+    private static final String WITHOUT_TRANSACTIONS_SQL =
+            "SELECT u.id AS user_id FROM users u " +
+                    "WHERE NOT EXISTS (SELECT 1 FROM transactions t WHERE t.user_id = u.id)";
+
+    private static final String AUDIENCE_SQL =
+            "SELECT a.user_id, COUNT(*) OVER () FROM (%s) a ORDER BY a.user_id LIMIT ?";
+
+    private static final String COUNT_SQL =
+            "COUNT(CASE WHEN UPPER(p.type) = ? THEN 1 END)";
+
+    private static final String SUM_SQL =
+            "COALESCE(SUM(CASE WHEN UPPER(p.type) = ? AND UPPER(t.type) = ? THEN t.amount END), 0)";
+
+    // users по первичному ключу и транзакции по индексу user_id: строки идут по возрастанию id без сортировки
+    private static final String USER_TRANSACTIONS_SQL =
+            "SELECT u.id, p.type, t.type, t.amount FROM users u " +
+                    "LEFT JOIN transactions t ON t.user_id = u.id " +
+                    "LEFT JOIN products p ON p.id = t.product_id " +
+                    "ORDER BY u.id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int fetchSize;
+
+    public RuleAudienceRepositoryImpl(@Qualifier("recommendationsJdbcTemplate") JdbcTemplate jdbcTemplate,
+                                      @Value("${rule-api.audience-fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.fetchSize = fetchSize;
+    }
+
+    @Override
+    public Audience simulate(CompiledRule rule, int sampleSize) {
+        List<Object> args = new ArrayList<>();
+        String sql = audienceSql(rule, args);
+        args.add(Math.max(1, sampleSize));
+        List<UUID> sample = new ArrayList<>();
+        long[] users = {0};
+        jdbcTemplate.query(sql, rs -> {
+            users[0] = rs.getLong(2);
+            if (sample.size() < sampleSize) {
+                sample.add(rs.getObject(1, UUID.class));
+            }
+        }, args.toArray());
+        return new Audience(users[0], sample);
+    }
+
+    @Override
+    public void forEachUserFacts(Consumer<UserFactSnapshot> handler) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            // без ленивого выполнения H2 целиком строит результат запроса до выдачи первой строки
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET LAZY_QUERY_EXECUTION TRUE");
+            }
+            try (PreparedStatement statement = connection.prepareStatement(USER_TRANSACTIONS_SQL,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                statement.setFetchSize(fetchSize);
+                try (ResultSet rs = statement.executeQuery()) {
+                    UserFactSnapshot.Builder current = null;
+                    UUID currentId = null;
+                    while (rs.next()) {
+                        UUID userId = rs.getObject(1, UUID.class);
+                        if (!userId.equals(currentId)) {
+                            if (current != null) {
+                                handler.accept(current.build());
+                            }
+                            current = UserFactSnapshot.builder(userId);
+                            currentId = userId;
+                        }
+                        String productType = rs.getString(2);
+                        // транзакции без продукта не попадают и в факты, загружаемые для рекомендаций
+                        if (productType != null) {
+                            current.add(productType, rs.getString(3), rs.getLong(4), 1);
+                        }
+                    }
+                    if (current != null) {
+                        handler.accept(current.build());
+                    }
+                }
+            } finally {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("SET LAZY_QUERY_EXECUTION FALSE");
+                }
+            }
+            return null;
+        });
+    }
+
+    private static String audienceSql(CompiledRule rule, List<Object> args) {
+        List<String> conditions = new ArrayList<>(rule.size());
+        for (int i = 0; i < rule.size(); i++) {
+            String condition = condition(rule.predicate(i), args);
+            conditions.add(rule.isNegated(i) ? "NOT (" + condition + ")" : condition);
+        }
+        String matched = String.format(MATCHED_SQL, conditions.isEmpty() ? "TRUE" : String.join(" AND ", conditions));
+        if (matchesEmptyFacts(rule)) {
+            matched = matched + " UNION ALL " + WITHOUT_TRANSACTIONS_SQL;
+        }
+        return String.format(AUDIENCE_SQL, matched);
+    }
+
+    private static String condition(FactPredicate predicate, List<Object> args) {
+        if (predicate instanceof UserOfPredicate userOf) {
+            args.add(userOf.productType());
+            return COUNT_SQL + " > 0";
+        }
+        if (predicate instanceof ActiveUserOfPredicate activeUserOf) {
+            args.add(activeUserOf.productType());
+            args.add(ActiveUserOfPredicate.MIN_TRANSACTIONS);
+            return COUNT_SQL + " >= ?";
+        }
+        if (predicate instanceof SumComparePredicate sumCompare) {
+            args.add(sumCompare.productType());
+            args.add(sumCompare.transactionsType());
+            args.add(sumCompare.constant());
+            // символ оператора берётся из перечисления Operator, а не из запроса
+            return SUM_SQL + " " + sumCompare.operator().getSymbol() + " ?";
+        }
+        if (predicate instanceof SumPairComparePredicate sumPair) {
+            args.add(sumPair.productTypeFirst());
+            args.add(sumPair.transactionsTypeFirst());
+            args.add(sumPair.productTypeSecond());
+            args.add(sumPair.transactionsTypeSecond());
+            return SUM_SQL + " " + sumPair.operator().getSymbol() + " " + SUM_SQL;
+        }
+        throw new IllegalArgumentException("Условие не поддерживается в симуляции: " + predicate.type());
+    }
+
+    private static boolean matchesEmptyFacts(CompiledRule rule) {
+        UserFactSnapshot empty = UserFactSnapshot.empty(null);
+        for (int i = 0; i < rule.size(); i++) {
+            if (rule.predicate(i).test(empty) == rule.isNegated(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,70 @@
+package ru.projectteamwork.finance_recommendations.repository.impl;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.projectteamwork.finance_recommendations.repository.RuleStatFlushRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+@Repository
+public class RuleStatFlushRepositoryImpl implements RuleStatFlushRepository {
+
+    // Источник берётся из dynamic_rule, поэтому счётчики удалённых правил не вставляются
+    private static final String UPSERT_SQL = """
+            MERGE INTO dynamic_rule_stat s
+            USING (SELECT r.id AS rule_id, CAST(? AS BIGINT) AS delta FROM dynamic_rule r WHERE r.id = ?) d
+            ON s.rule_id = d.rule_id
+            WHEN MATCHED THEN UPDATE SET fire_count = s.fire_count + d.delta
+            WHEN NOT MATCHED THEN INSERT (rule_id, fire_count) VALUES (d.rule_id, d.delta)
+            """;
+
+    // Строки встроенных правил заводятся при запуске, для остальных id обновление ничего не меняет
+    private static final String BUILTIN_UPDATE_SQL =
+            "UPDATE builtin_rule_stat SET fire_count = fire_count + ? WHERE rule_id = ?";
+
+    private static final String BUILTIN_REGISTER_SQL = """
+            MERGE INTO builtin_rule_stat s
+            USING (SELECT CAST(? AS UUID) AS rule_id) d
+            ON s.rule_id = d.rule_id
+            WHEN NOT MATCHED THEN INSERT (rule_id, fire_count) VALUES (d.rule_id, 0)
+            """;
+
+    private static final String BUILTIN_CLEANUP_SQL =
+            "DELETE FROM builtin_rule_stat WHERE rule_id NOT IN (%s)";
+
+    private final JdbcTemplate jdbc;
+
+    public RuleStatFlushRepositoryImpl(@Qualifier("defaultJdbcTemplate") JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @Override
+    @Transactional
+    public void addFireCounts(Map<UUID, Long> deltas) {
+        List<Object[]> args = new ArrayList<>(deltas.size());
+        deltas.forEach((ruleId, delta) -> args.add(new Object[]{delta, ruleId}));
+        jdbc.batchUpdate(UPSERT_SQL, args);
+        jdbc.batchUpdate(BUILTIN_UPDATE_SQL, args);
+    }
+
+    @Override
+    @Transactional
+    public void registerBuiltInRules(Collection<UUID> ruleIds) {
+        if (ruleIds.isEmpty()) {
+            jdbc.update("DELETE FROM builtin_rule_stat");
+            return;
+        }
+        List<Object[]> args = new ArrayList<>(ruleIds.size());
+        ruleIds.forEach(ruleId -> args.add(new Object[]{ruleId}));
+        jdbc.batchUpdate(BUILTIN_REGISTER_SQL, args);
+        jdbc.update(String.format(BUILTIN_CLEANUP_SQL, String.join(",", Collections.nCopies(ruleIds.size(), "?"))),
+                ruleIds.toArray());
+    }
+}
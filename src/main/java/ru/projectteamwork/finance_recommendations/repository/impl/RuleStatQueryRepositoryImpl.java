@@ -0,0 +1,71 @@
+package ru.projectteamwork.finance_recommendations.repository.impl;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.projectteamwork.finance_recommendations.repository.RuleStatQueryRepository;
+
+import java.sql.PreparedStatement;
+import java.util.UUID;
+
+@Repository
+public class RuleStatQueryRepositoryImpl implements RuleStatQueryRepository {
+
+    // курсор и лимит применяются в каждой ветви отдельно, чтобы БД читала по индексу только страницу,
+    // а не строила и сортировала объединение всех правил; снаружи остаётся слияние двух страниц
+    private static final String FIRE_COUNTS_SQL = """
+            SELECT c.id, c.fire_count
+            FROM ((SELECT r.id AS id, COALESCE(s.fire_count, 0) AS fire_count
+                   FROM dynamic_rule r
+                   LEFT JOIN dynamic_rule_stat s ON s.rule_id = r.id
+                   %1$s)
+                  UNION ALL
+                  (SELECT b.rule_id AS id, b.fire_count AS fire_count
+                   FROM builtin_rule_stat b
+                   %2$s)) c
+            ORDER BY c.id
+            %3$s
+            """;
+
+    private final JdbcTemplate jdbc;
+    private final int fetchSize;
+
+    public RuleStatQueryRepositoryImpl(@Qualifier("defaultJdbcTemplate") JdbcTemplate jdbc,
+                                       @Value("${rule-stats.fetch-size:1000}") int fetchSize) {
+        this.jdbc = jdbc;
+        this.fetchSize = fetchSize;
+    }
+
+    @Override
+    public void forEachFireCount(UUID after, Integer limit, FireCountHandler handler) {
+        String sql = String.format(FIRE_COUNTS_SQL,
+                branch("r.id", after != null, limit != null),
+                branch("b.rule_id", after != null, limit != null),
+                limit != null ? "LIMIT ?" : "");
+        jdbc.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            statement.setFetchSize(fetchSize);
+            int index = 1;
+            for (int branch = 0; branch < 2; branch++) {
+                if (after != null) {
+                    statement.setObject(index++, after);
+                }
+                if (limit != null) {
+                    statement.setInt(index++, limit);
+                }
+            }
+            if (limit != null) {
+                statement.setInt(index, limit);
+            }
+            return statement;
+        }, rs -> {
+            handler.accept(rs.getObject(1, UUID.class), rs.getLong(2));
+        });
+    }
+
+    private static String branch(String idColumn, boolean cursor, boolean limited) {
+        String where = cursor ? "WHERE " + idColumn + " > ?" : "";
+        return limited ? where + " ORDER BY " + idColumn + " LIMIT ?" : where;
+    }
+}
@@ -0,0 +1,101 @@
+package ru.projectteamwork.finance_recommendations.repository.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.projectteamwork.finance_recommendations.repository.UserFactsChanged;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Отслеживает новые транзакции по _ROWID_ и сообщает, у каких пользователей они появились.
+ * Отметка хранится в памяти и при старте устанавливается на последнюю строку: кеши после старта пусты.
+ * Работает, только если выключены агрегаты {@link UserFactRollup}: тогда события публикуют они сами.
+ */
+@Component
+@ConditionalOnProperty(name = "recommendations.rollup.enabled", havingValue = "false", matchIfMissing = true)
+public class TransactionChangeFeed {
+
+    private static final String LAST_ROW_SQL = "SELECT COALESCE(MAX(_ROWID_), 0) FROM transactions";
+
+    private static final String CHANGED_USERS_SQL =
+            "SELECT _ROWID_, user_id FROM transactions WHERE _ROWID_ > ? ORDER BY _ROWID_ LIMIT ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int batchSize;
+    private final Counter changedUsers;
+    private final Logger logger = LoggerFactory.getLogger(TransactionChangeFeed.class);
+
+    private long watermark = -1;
+
+    public TransactionChangeFeed(@Qualifier("recommendationsJdbcTemplate") JdbcTemplate jdbcTemplate,
+                                 ApplicationEventPublisher eventPublisher,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${recommendations.change-feed.batch-size:50000}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
+        this.batchSize = batchSize;
+        this.changedUsers = changedUsersCounter(meterRegistry);
+    }
+
+    static Counter changedUsersCounter(MeterRegistry meterRegistry) {
+        return Counter.builder("recommendations.change-feed.users")
+                .description("Количество пользователей, чьи кеши сброшены из-за новых транзакций")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        try {
+            Long last = jdbcTemplate.queryForObject(LAST_ROW_SQL, Long.class);
+            watermark = last != null ? last : 0L;
+        } catch (DataAccessException e) {
+            logger.error("Не удалось прочитать отметку транзакций, отслеживание изменений отложено", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${recommendations.change-feed.interval-ms:10000}",
+            initialDelayString = "${recommendations.change-feed.interval-ms:10000}")
+    public synchronized void poll() {
+        if (watermark < 0) {
+            init();
+            return;
+        }
+        try {
+            while (true) {
+                Set<UUID> users = new HashSet<>();
+                long[] last = {watermark, 0};
+                jdbcTemplate.query(CHANGED_USERS_SQL, rs -> {
+                    last[0] = rs.getLong(1);
+                    last[1]++;
+                    users.add(UUID.fromString(rs.getString(2)));
+                }, watermark, batchSize);
+                if (last[1] == 0) {
+                    return;
+                }
+                watermark = last[0];
+                changedUsers.increment(users.size());
+                logger.info("Новые транзакции: строк={}, пользователей={}, отметка={}", last[1], users.size(), watermark);
+                eventPublisher.publishEvent(new UserFactsChanged(users));
+                if (last[1] < batchSize) {
+                    return;
+                }
+            }
+        } catch (DataAccessException e) {
+            logger.error("Не удалось проверить новые транзакции, отметка={}", watermark, e);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package ru.projectteamwork.finance_recommendations.repository.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.projectteamwork.finance_recommendations.exception.DeadlineExceededException;
+import ru.projectteamwork.finance_recommendations.repository.RequestDeadline;
+import ru.projectteamwork.finance_recommendations.repository.UserFactSnapshot;
+import ru.projectteamwork.finance_recommendations.repository.UserFactsChanged;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Агрегаты транзакций по пользователям, сохранённые в БД правил (user_fact_rollup)
+ * и обновляемые инкрементально: задача читает из БД транзакций только строки
+ * с _ROWID_ больше сохранённой отметки и прибавляет их к агрегатам.
+ * Дельты и новая отметка фиксируются в одной транзакции, поэтому каждая строка учитывается ровно один раз.
+ * Предполагается, что транзакции только добавляются: изменения и удаления строк не отслеживаются.
+ * После фиксации каждой порции публикуется {@link UserFactsChanged} с затронутыми пользователями.
+ */
+@Component
+@ConditionalOnProperty(name = "recommendations.rollup.enabled", havingValue = "true")
+public class UserFactRollup {
+
+    private static final String CHECKPOINT_NAME = "user_fact_rollup";
+
+    private static final String NEW_TRANSACTIONS_SQL =
+            "SELECT t._ROWID_, t.user_id, p.type, t.type, t.amount " +
+                    "FROM transactions t INNER JOIN products p ON t.product_id = p.id " +
+                    "WHERE t._ROWID_ > ? ORDER BY t._ROWID_ LIMIT ?";
+
+    private static final String WATERMARK_SQL =
+            "SELECT last_tx_id FROM rollup_checkpoint WHERE name = ?";
+
+    private static final String UPDATE_WATERMARK_SQL =
+            "UPDATE rollup_checkpoint SET last_tx_id = ? WHERE name = ? AND last_tx_id = ?";
+
+    private static final String UPSERT_SQL = """
+            MERGE INTO user_fact_rollup r
+            USING (SELECT CAST(? AS UUID) AS user_id, CAST(? AS VARCHAR(64)) AS product_type,
+                          CAST(? AS VARCHAR(64)) AS tx_type, CAST(? AS BIGINT) AS sum_amount,
+                          CAST(? AS BIGINT) AS tx_count, CAST(? AS BIGINT) AS last_tx_id) d
+            ON r.user_id = d.user_id AND r.product_type = d.product_type AND r.tx_type = d.tx_type
+            WHEN MATCHED THEN UPDATE SET sum_amount = r.sum_amount + d.sum_amount,
+                                         tx_count = r.tx_count + d.tx_count,
+                                         last_tx_id = d.last_tx_id
+            WHEN NOT MATCHED THEN INSERT (user_id, product_type, tx_type, sum_amount, tx_count, last_tx_id)
+                VALUES (d.user_id, d.product_type, d.tx_type, d.sum_amount, d.tx_count, d.last_tx_id)
+            """;
+
+    private static final String ROLLUP_SQL =
+            "SELECT user_id, product_type, tx_type, sum_amount, tx_count FROM user_fact_rollup WHERE user_id IN (%s)";
+
+    private final JdbcTemplate transactionsJdbc;
+    private final JdbcTemplate rollupJdbc;
+    private final TransactionTemplate rollupTx;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Counter changedUsers;
+    private final int batchSize;
+    private final int sqlChunkSize;
+    private final Logger logger = LoggerFactory.getLogger(UserFactRollup.class);
+
+    private volatile boolean caughtUp;
+
+    public UserFactRollup(@Qualifier("recommendationsJdbcTemplate") JdbcTemplate transactionsJdbc,
+                          @Qualifier("defaultJdbcTemplate") JdbcTemplate rollupJdbc,
+                          PlatformTransactionManager transactionManager,
+                          ApplicationEventPublisher eventPublisher,
+                          MeterRegistry meterRegistry,
+                          @Value("${recommendations.rollup.batch-size:50000}") int batchSize,
+                          @Value("${recommendations.batch.sql-chunk-size:500}") int sqlChunkSize) {
+        this.transactionsJdbc = transactionsJdbc;
+        this.rollupJdbc = rollupJdbc;
+        this.rollupTx = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.changedUsers = TransactionChangeFeed.changedUsersCounter(meterRegistry);
+        this.batchSize = batchSize;
+        this.sqlChunkSize = sqlChunkSize;
+    }
+
+    /**
+     * true после того, как задача хотя бы раз дочитала все имевшиеся транзакции;
+     * до этого агрегаты неполные и ими пользоваться нельзя.
+     */
+    public boolean isCaughtUp() {
+        return caughtUp;
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${recommendations.rollup.interval-ms:10000}")
+    public synchronized void refresh() {
+        long started = System.nanoTime();
+        long applied = 0;
+        // при первоначальной догрузке истории кеши ещё не заполнены из агрегатов, сбрасывать нечего
+        boolean notify = caughtUp;
+        try {
+            long watermark = readWatermark();
+            while (true) {
+                Batch batch = readBatch(watermark);
+                if (batch.rows() == 0) {
+                    break;
+                }
+                long from = watermark;
+                rollupTx.executeWithoutResult(status -> apply(batch, from));
+                watermark = batch.lastRowId();
+                applied += batch.rows();
+                if (notify) {
+                    Set<UUID> users = batch.userIds();
+                    changedUsers.increment(users.size());
+                    eventPublisher.publishEvent(new UserFactsChanged(users));
+                }
+                if (batch.rows() < batchSize) {
+                    break;
+                }
+            }
+            if (!caughtUp) {
+                caughtUp = true;
+                logger.info("Агрегаты пользователей догнали БД транзакций: отметка={}", watermark);
+            }
+            if (applied > 0) {
+                logger.info("Агрегаты пользователей обновлены: строк={}, отметка={}, {} ms",
+                        applied, watermark, (System.nanoTime() - started) / 1_000_000);
+            }
+        } catch (DataAccessException e) {
+            logger.error("Не удалось обновить агрегаты пользователей, используются SQL-запросы", e);
+        }
+    }
+
+    /**
+     * Снимки пользователей, для которых есть агрегаты. Пользователи без строк в user_fact_rollup
+     * в результат не попадают и загружаются исходным SQL-запросом.
+     */
+    public Map<UUID, UserFactSnapshot> findAll(Collection<UUID> userIds) {
+        if (!caughtUp || userIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        List<UUID> ids = new ArrayList<>(userIds);
+        Map<UUID, UserFactSnapshot.Builder> builders = new HashMap<>();
+        try {
+            for (int from = 0; from < ids.size(); from += sqlChunkSize) {
+                List<UUID> chunk = ids.subList(from, Math.min(from + sqlChunkSize, ids.size()));
+                String sql = rollupSql(chunk.size());
+                rollupJdbc.query(sql, rs -> {
+                    UUID userId = rs.getObject(1, UUID.class);
+                    builders.computeIfAbsent(userId, UserFactSnapshot::builder)
+                            .add(rs.getString(2), rs.getString(3), rs.getLong(4), Math.toIntExact(rs.getLong(5)));
+                }, chunk.toArray());
+            }
+        } catch (DataAccessException e) {
+            logger.warn("Не удалось прочитать агрегаты пользователей, используются SQL-запросы: users={}", ids.size(), e);
+            return Collections.emptyMap();
+        }
+        Map<UUID, UserFactSnapshot> result = new HashMap<>(builders.size() * 2);
+        builders.forEach((id, builder) -> result.put(id, builder.build()));
+        return result;
+    }
+
+    /**
+     * Агрегаты одного пользователя или null, если их нет или они недоступны.
+     * Агрегаты хранятся в БД правил, которая может быть не H2, поэтому срок задаётся стандартным таймаутом JDBC.
+     *
+     * @param deadline срок запроса или null; по его истечении бросается DeadlineExceededException
+     */
+    public UserFactSnapshot find(UUID userId, RequestDeadline deadline) {
+        if (deadline == null) {
+            return findAll(List.of(userId)).get(userId);
+        }
+        if (!caughtUp) {
+            return null;
+        }
+        if (deadline.isExpired()) {
+            throw new DeadlineExceededException("Срок запроса истёк до чтения агрегатов пользователя");
+        }
+        UserFactSnapshot.Builder builder = UserFactSnapshot.builder(userId);
+        boolean[] found = {false};
+        try {
+            rollupJdbc.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(rollupSql(1));
+                statement.setObject(1, userId);
+                statement.setQueryTimeout(deadline.remainingSeconds());
+                return statement;
+            }, rs -> {
+                found[0] = true;
+                builder.add(rs.getString(2), rs.getString(3), rs.getLong(4), Math.toIntExact(rs.getLong(5)));
+            });
+        } catch (QueryTimeoutException e) {
+            throw new DeadlineExceededException("Срок запроса истёк при чтении агрегатов пользователя", e);
+        } catch (DataAccessException e) {
+            logger.warn("Не удалось прочитать агрегаты пользователя, используется SQL-запрос: userId={}", userId, e);
+            return null;
+        }
+        return found[0] ? builder.build() : null;
+    }
+
+    static String rollupSql(int users) {
+        return String.format(ROLLUP_SQL, String.join(",", Collections.nCopies(users, "?")));
+    }
+
+    private long readWatermark() {
+        Long watermark = rollupJdbc.queryForObject(WATERMARK_SQL, Long.class, CHECKPOINT_NAME);
+        return watermark != null ? watermark : 0L;
+    }
+
+    private Batch readBatch(long watermark) {
+        Map<RollupKey, long[]> deltas = new HashMap<>();
+        long[] last = {watermark, 0};
+        transactionsJdbc.query(NEW_TRANSACTIONS_SQL, rs -> {
+            long rowId = rs.getLong(1);
+            RollupKey key = new RollupKey(UUID.fromString(rs.getString(2)), rs.getString(3), rs.getString(4));
+            long[] delta = deltas.computeIfAbsent(key, k -> new long[3]);
+            delta[0] += rs.getLong(5);
+            delta[1]++;
+            delta[2] = rowId;
+            last[0] = rowId;
+            last[1]++;
+        }, watermark, batchSize);
+        return new Batch(deltas, last[0], (int) last[1]);
+    }
+
+    private void apply(Batch batch, long expectedWatermark) {
+        List<Object[]> args = new ArrayList<>(batch.deltas().size());
+        batch.deltas().forEach((key, delta) ->
+                args.add(new Object[]{key.userId(), key.productType(), key.txType(), delta[0], delta[1], delta[2]}));
+        rollupJdbc.batchUpdate(UPSERT_SQL, args);
+        // условие на прежнюю отметку защищает от двойного учёта при параллельном запуске на нескольких узлах
+        int updated = rollupJdbc.update(UPDATE_WATERMARK_SQL, batch.lastRowId(), CHECKPOINT_NAME, expectedWatermark);
+        if (updated != 1) {
+            throw new IllegalStateException("Отметка агрегатов изменена другим процессом");
+        }
+    }
+
+    private record RollupKey(UUID userId, String productType, String txType) {
+    }
+
+    private record Batch(Map<RollupKey, long[]> deltas, long lastRowId, int rows) {
+
+        Set<UUID> userIds() {
+            Set<UUID> ids = new HashSet<>();
+            for (RollupKey key : deltas.keySet()) {
+                ids.add(key.userId());
+            }
+            return ids;
+        }
+    }
+}
@@ -1,34 +1,112 @@
 package ru.projectteamwork.finance_recommendations.repository.impl;
 
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Repository;
 import ru.projectteamwork.finance_recommendations.repository.UserLookupRepository;
+import ru.projectteamwork.finance_recommendations.repository.UserNameIndex;
 
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
 import java.util.UUID;
 
+/**
+ * Поиск пользователей по имени через индекс в памяти, который перечитывается по расписанию.
+ * Пока индекс не загружен, используется SQL-запрос.
+ */
 @Repository
 public class UserLookupRepositoryImpl implements UserLookupRepository {
 
+    private static final String USERS_SQL = "SELECT id, first_name, last_name FROM users";
+
+    // ё и е не различаются, как в UserNameIndex.normalize: параметры передаются уже свёрнутыми в верхнем регистре
+    private static final String FIND_BY_NAME_SQL = """
+            SELECT u.id
+            FROM users u
+            WHERE REPLACE(UPPER(u.first_name), 'Ё', 'Е') = ?
+              AND REPLACE(UPPER(u.last_name), 'Ё', 'Е')  = ?
+        """;
+
+    private static final String USER_IDS_SQL = "SELECT id FROM users ORDER BY id LIMIT ?";
+
+    private static final String USER_IDS_AFTER_SQL = "SELECT id FROM users WHERE id > ? ORDER BY id LIMIT ?";
+
     private final JdbcTemplate jdbc;
+    private final int fetchSize;
+    private final Logger logger = LoggerFactory.getLogger(UserLookupRepositoryImpl.class);
+
+    private volatile UserNameIndex index;
 
-    public UserLookupRepositoryImpl(@Qualifier("recommendationsJdbcTemplate") JdbcTemplate jdbc) {
+    public UserLookupRepositoryImpl(@Qualifier("recommendationsJdbcTemplate") JdbcTemplate jdbc,
+                                    @Value("${recommendations.user-index.fetch-size:10000}") int fetchSize) {
         this.jdbc = jdbc;
+        this.fetchSize = fetchSize;
+    }
+
+    @PostConstruct
+    public void init() {
+        refresh();
+    }
+
+    @Scheduled(fixedDelayString = "${recommendations.user-index.refresh-interval-ms:300000}",
+            initialDelayString = "${recommendations.user-index.refresh-interval-ms:300000}")
+    public void refresh() {
+        long started = System.nanoTime();
+        try {
+            UserNameIndex.Builder builder = UserNameIndex.builder();
+            jdbc.query(connection -> {
+                var statement = connection.prepareStatement(USERS_SQL);
+                statement.setFetchSize(fetchSize);
+                return statement;
+            }, rs -> {
+                builder.add(UUID.fromString(rs.getString(1)), rs.getString(2), rs.getString(3));
+            });
+            UserNameIndex loaded = builder.build();
+            index = loaded;
+            logger.info("Индекс имён пользователей загружен: names={}, {} ms",
+                    loaded.size(), (System.nanoTime() - started) / 1_000_000);
+        } catch (DataAccessException e) {
+            logger.error("Не удалось загрузить индекс имён пользователей, используются SQL-запросы", e);
+        }
     }
 
     @Override
-    @Cacheable(cacheNames = "userIdCache", key = "#fullName")
     public Optional<UUID> findSingleUserIdByFullName(String fullName) {
-        String sql = """
-            SELECT u.id
-            FROM users u
-            WHERE UPPER(u.first_name) = UPPER(SPLIT_PART(?, ' ', 1))
-              AND UPPER(u.last_name)  = UPPER(SPLIT_PART(?, ' ', 2))
-        """;
-        List<UUID> ids = jdbc.query(sql, (rs, i) -> UUID.fromString(rs.getString(1)), fullName.trim());
+        List<UUID> ids = findUserIdsByFullName(fullName);
         return ids.size() == 1 ? Optional.of(ids.get(0)) : Optional.empty();
     }
-}
\ No newline at end of file
+
+    @Override
+    public List<UUID> findUserIdsByFullName(String fullName) {
+        UserNameIndex current = index;
+        if (current != null) {
+            return current.find(fullName);
+        }
+        String normalized = UserNameIndex.normalize(fullName).toUpperCase(Locale.ROOT);
+        int space = normalized.indexOf(' ');
+        String firstName = space < 0 ? normalized : normalized.substring(0, space);
+        String lastName = space < 0 ? "" : normalized.substring(space + 1);
+        return jdbc.query(FIND_BY_NAME_SQL, (rs, i) -> UUID.fromString(rs.getString(1)), firstName, lastName);
+    }
+
+    @Override
+    public List<String> suggestFullNames(String prefix, int limit) {
+        UserNameIndex current = index;
+        return current != null ? current.suggest(prefix, limit) : List.of();
+    }
+
+    @Override
+    public List<UUID> findUserIdsAfter(UUID after, int limit) {
+        if (after == null) {
+            return jdbc.query(USER_IDS_SQL, (rs, i) -> UUID.fromString(rs.getString(1)), limit);
+        }
+        return jdbc.query(USER_IDS_AFTER_SQL, (rs, i) -> UUID.fromString(rs.getString(1)), after.toString(), limit);
+    }
+}
@@ -0,0 +1,114 @@
+package ru.projectteamwork.finance_recommendations.rules;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+import ru.projectteamwork.finance_recommendations.api.QueryItem;
+import ru.projectteamwork.finance_recommendations.dto.RecommendationDTO;
+import ru.projectteamwork.finance_recommendations.evaluator.CompiledRule;
+import ru.projectteamwork.finance_recommendations.evaluator.FactPredicate;
+import ru.projectteamwork.finance_recommendations.evaluator.RuleCompiler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Встроенные продукты банка, описанные в rules/builtin-rules.json.
+ * Правило продукта — дизъюнкция групп условий (any_of); каждая группа компилируется в отдельное
+ * {@link CompiledRule} с id продукта-правила и вычисляется вместе с динамическими правилами.
+ */
+@Component
+public class BuiltInRules {
+
+    private static final String RESOURCE = "rules/builtin-rules.json";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final List<CompiledRule> compiled;
+    private final Set<UUID> ids;
+    private final long fingerprint;
+
+    public BuiltInRules() {
+        List<Definition> definitions = read();
+        List<CompiledRule> rules = new ArrayList<>();
+        Set<UUID> ruleIds = new LinkedHashSet<>();
+        long hash = 0;
+        for (Definition definition : definitions) {
+            if (!ruleIds.add(definition.id())) {
+                throw new IllegalStateException("Повторяющийся id встроенного правила: " + definition.id());
+            }
+            if (definition.any_of() == null || definition.any_of().isEmpty()) {
+                throw new IllegalStateException("Встроенное правило " + definition.name() + " не содержит условий");
+            }
+            RecommendationDTO recommendation = new RecommendationDTO(
+                    definition.product_name(),
+                    definition.product_id().toString(),
+                    definition.product_text()
+            );
+            for (List<QueryItem> group : definition.any_of()) {
+                List<FactPredicate> predicates = new ArrayList<>(group.size());
+                List<Boolean> negated = new ArrayList<>(group.size());
+                for (QueryItem item : group) {
+                    FactPredicate predicate = RuleCompiler.compilePredicate(item.query(), item.arguments());
+                    predicates.add(predicate);
+                    negated.add(item.negate());
+                    hash = hash * 31 + predicate.type().getValue().hashCode();
+                    hash = hash * 31 + predicate.arguments().hashCode();
+                    hash = hash * 31 + Boolean.hashCode(item.negate());
+                }
+                rules.add(new CompiledRule(definition.id(), definition.name(), definition.product_id(),
+                        recommendation, predicates, negated));
+                hash = hash * 31 + definition.id().hashCode();
+            }
+        }
+        this.compiled = List.copyOf(rules);
+        this.ids = Set.copyOf(ruleIds);
+        this.fingerprint = hash;
+    }
+
+    /**
+     * Группы условий всех встроенных правил в порядке описания.
+     */
+    public List<CompiledRule> compiled() {
+        return compiled;
+    }
+
+    public Set<UUID> ids() {
+        return ids;
+    }
+
+    /**
+     * Хеш описаний, не зависящий от запуска: меняется только вместе с rules/builtin-rules.json.
+     */
+    public long fingerprint() {
+        return fingerprint;
+    }
+
+    private static List<Definition> read() {
+        try (InputStream in = BuiltInRules.class.getClassLoader().getResourceAsStream(RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException("Не найдено описание встроенных правил: " + RESOURCE);
+            }
+            return OBJECT_MAPPER.readValue(in, new TypeReference<List<Definition>>() {
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось прочитать описание встроенных правил: " + RESOURCE, e);
+        }
+    }
+
+    /**
+     * Продукт и его условия: рекомендация выдаётся, если выполнены все условия хотя бы одной группы any_of.
+     */
+    record Definition(UUID id,
+                      String name,
+                      String product_name,
+                      UUID product_id,
+                      String product_text,
+                      List<List<QueryItem>> any_of) {
+    }
+}
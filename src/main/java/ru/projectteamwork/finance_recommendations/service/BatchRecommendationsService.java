@@ -0,0 +1,14 @@
+package ru.projectteamwork.finance_recommendations.service;
+
+import ru.projectteamwork.finance_recommendations.dto.RecommendationsResponse;
+
+import java.util.Iterator;
+import java.util.function.Consumer;
+
+public interface BatchRecommendationsService {
+    /**
+     * Идентификаторы читаются из userIds порциями по мере обработки, поэтому пакет не обязан помещаться в память.
+     * Срабатывания правил в статистику не попадают: пакетный расчёт не является выдачей пользователю.
+     */
+    void streamRecommendations(Iterator<String> userIds, Consumer<RecommendationsResponse> sink);
+}
@@ -1,9 +1,25 @@
 package ru.projectteamwork.finance_recommendations.service;
 
 import ru.projectteamwork.finance_recommendations.dto.RecommendationDTO;
+import ru.projectteamwork.finance_recommendations.dto.RecommendationTrace;
+import ru.projectteamwork.finance_recommendations.dto.RecommendationsResult;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.UUID;
 
 public interface RecommendationsService {
     List<RecommendationDTO> getRecommendationsForUser(String userId);
+
+    /**
+     * То же, что {@link #getRecommendationsForUser(String)}, но не дольше budget (null — срок по умолчанию).
+     * Если срок истёк, возвращается уже известное — рекомендации проверенных правил
+     * или последний сохранённый результат — с признаком partial.
+     */
+    RecommendationsResult getRecommendationsForUser(String userId, Duration budget);
+
+    /**
+     * Вычисляет рекомендации заново, минуя кеш результатов, и возвращает подробности каждого шага.
+     */
+    RecommendationTrace explain(UUID userId);
 }
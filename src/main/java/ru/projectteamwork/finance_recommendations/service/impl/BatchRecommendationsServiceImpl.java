@@ -0,0 +1,130 @@
+package ru.projectteamwork.finance_recommendations.service.impl;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.projectteamwork.finance_recommendations.dto.RecommendationsResponse;
+import ru.projectteamwork.finance_recommendations.evaluator.CompiledRuleSet;
+import ru.projectteamwork.finance_recommendations.evaluator.RecommendationEngine;
+import ru.projectteamwork.finance_recommendations.domain.service.RuleService;
+import ru.projectteamwork.finance_recommendations.repository.RecommendationsRepository;
+import ru.projectteamwork.finance_recommendations.repository.UserFactSnapshot;
+import ru.projectteamwork.finance_recommendations.service.BatchRecommendationsService;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+@Service
+public class BatchRecommendationsServiceImpl implements BatchRecommendationsService {
+    private final RecommendationsRepository recommendationsRepository;
+    private final RecommendationEngine engine;
+    private final RuleService ruleService;
+    private final int chunkSize;
+    private final int threads;
+    private final ExecutorService executor;
+    private final Logger logger = LoggerFactory.getLogger(BatchRecommendationsServiceImpl.class);
+
+    public BatchRecommendationsServiceImpl(RecommendationsRepository recommendationsRepository,
+                                           RecommendationEngine engine,
+                                           RuleService ruleService,
+                                           @Value("${recommendations.batch.chunk-size:1000}") int chunkSize,
+                                           @Value("${recommendations.batch.threads:4}") int threads) {
+        this.recommendationsRepository = recommendationsRepository;
+        this.engine = engine;
+        this.ruleService = ruleService;
+        this.chunkSize = chunkSize;
+        this.threads = threads;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "recommendations-batch-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void streamRecommendations(Iterator<String> userIds, Consumer<RecommendationsResponse> sink) {
+        CompiledRuleSet rules = ruleService.findAllCompiled();
+        // Держим в работе не больше двух чанков на поток, чтобы память не росла вместе с размером пакета
+        Deque<Future<List<RecommendationsResponse>>> inFlight = new ArrayDeque<>();
+        try {
+            while (userIds.hasNext()) {
+                List<String> chunk = new ArrayList<>(chunkSize);
+                while (chunk.size() < chunkSize && userIds.hasNext()) {
+                    chunk.add(userIds.next());
+                }
+                inFlight.addLast(executor.submit(() -> processChunk(chunk, rules)));
+                if (inFlight.size() >= threads * 2) {
+                    drainOne(inFlight, sink);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                drainOne(inFlight, sink);
+            }
+        } finally {
+            inFlight.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private void drainOne(Deque<Future<List<RecommendationsResponse>>> inFlight,
+                          Consumer<RecommendationsResponse> sink) {
+        try {
+            inFlight.removeFirst().get().forEach(sink);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Пакетная обработка прервана");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : new IllegalStateException(e.getCause());
+        }
+    }
+
+    private List<RecommendationsResponse> processChunk(List<String> chunk, CompiledRuleSet rules) {
+        UUID[] parsed = new UUID[chunk.size()];
+        List<UUID> ids = new ArrayList<>(chunk.size());
+        for (int i = 0; i < parsed.length; i++) {
+            parsed[i] = parseUuid(chunk.get(i));
+            if (parsed[i] != null) {
+                ids.add(parsed[i]);
+            }
+        }
+        Map<UUID, UserFactSnapshot> facts = recommendationsRepository.loadFacts(ids);
+
+        List<RecommendationsResponse> responses = new ArrayList<>(chunk.size());
+        for (int i = 0; i < parsed.length; i++) {
+            UserFactSnapshot snapshot = parsed[i] != null ? facts.get(parsed[i]) : null;
+            responses.add(new RecommendationsResponse(
+                    chunk.get(i),
+                    snapshot != null ? engine.recommend(snapshot, rules, false) : List.of()
+            ));
+        }
+        return responses;
+    }
+
+    private UUID parseUuid(String userId) {
+        try {
+            return UUID.fromString(userId);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            logger.error("Некорректная UUID строка: {}", userId);
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,275 @@
+package ru.projectteamwork.finance_recommendations.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.projectteamwork.finance_recommendations.domain.service.RuleRegistry;
+import ru.projectteamwork.finance_recommendations.dto.RecommendationDTO;
+import ru.projectteamwork.finance_recommendations.evaluator.RecommendationEngine;
+import ru.projectteamwork.finance_recommendations.repository.PrecomputedRecommendationsRepository;
+import ru.projectteamwork.finance_recommendations.repository.PrecomputedRecommendationsRepository.Sweep;
+import ru.projectteamwork.finance_recommendations.repository.PrecomputedRecommendationsRepository.SweepStatus;
+import ru.projectteamwork.finance_recommendations.repository.RecommendationsRepository;
+import ru.projectteamwork.finance_recommendations.repository.UserFactSnapshot;
+import ru.projectteamwork.finance_recommendations.repository.UserFactsChanged;
+import ru.projectteamwork.finance_recommendations.repository.UserLookupRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Периодический проход по всем пользователям БД транзакций: рекомендации вычисляются
+ * пачками в пуле потоков и сохраняются в precomputed_recommendation.
+ * Пользователи перебираются по возрастанию id, а отметка прохода сдвигается только после того,
+ * как сохранены все предыдущие пачки, поэтому после перезапуска проход продолжается с отметки.
+ * Пользователи, у которых факты изменились после начала расчёта пачки, не сохраняются:
+ * иначе результат по старым фактам перезаписал бы удаление из {@link UserFactsChanged}.
+ */
+@Component
+@ConditionalOnProperty(name = "recommendations.precompute.enabled", havingValue = "true")
+public class RecommendationsPrecomputeJob {
+
+    private final Logger logger = LoggerFactory.getLogger(RecommendationsPrecomputeJob.class);
+
+    private final UserLookupRepository userLookupRepository;
+    private final RecommendationsRepository recommendationsRepository;
+    private final PrecomputedRecommendationsRepository precomputedRepository;
+    private final RecommendationEngine engine;
+    private final RuleRegistry ruleRegistry;
+    private final int chunkSize;
+    private final int threads;
+    private final ExecutorService executor;
+    private final Counter usersCounter;
+
+    private volatile Progress progress;
+
+    // номер последнего изменения фактов пользователя; блокировка держится только на чтение и сравнение номеров
+    private final Map<UUID, Long> changedAt = new HashMap<>();
+    private long changeSequence;
+
+    public RecommendationsPrecomputeJob(UserLookupRepository userLookupRepository,
+                                        RecommendationsRepository recommendationsRepository,
+                                        PrecomputedRecommendationsRepository precomputedRepository,
+                                        RecommendationEngine engine,
+                                        RuleRegistry ruleRegistry,
+                                        MeterRegistry meterRegistry,
+                                        @Value("${recommendations.precompute.chunk-size:1000}") int chunkSize,
+                                        @Value("${recommendations.precompute.threads:4}") int threads) {
+        this.userLookupRepository = userLookupRepository;
+        this.recommendationsRepository = recommendationsRepository;
+        this.precomputedRepository = precomputedRepository;
+        this.engine = engine;
+        this.ruleRegistry = ruleRegistry;
+        this.chunkSize = chunkSize;
+        this.threads = threads;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "recommendations-precompute-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.usersCounter = Counter.builder("recommendations.precompute.users")
+                .description("Количество пользователей, для которых рекомендации вычислены заранее")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${recommendations.precompute.interval-ms:3600000}",
+            initialDelayString = "${recommendations.precompute.initial-delay-ms:60000}")
+    public synchronized void sweep() {
+        RuleRegistry.RuleSnapshot rules = ruleRegistry.current();
+        Progress current;
+        try {
+            current = begin(rules.fingerprint());
+        } catch (RuntimeException e) {
+            logger.error("Не удалось начать предрасчёт рекомендаций", e);
+            return;
+        }
+        progress = current;
+        logger.info("Предрасчёт рекомендаций {}: старт после пользователя {}, уже обработано {}",
+                current.sweepId, current.lastUserId, current.usersDone);
+
+        Deque<Future<Chunk>> inFlight = new ArrayDeque<>();
+        try {
+            UUID cursor = current.lastUserId;
+            while (true) {
+                List<UUID> page = userLookupRepository.findUserIdsAfter(cursor, chunkSize);
+                if (page.isEmpty()) {
+                    break;
+                }
+                cursor = page.get(page.size() - 1);
+                inFlight.addLast(executor.submit(() -> processChunk(page, rules, current.sweepId)));
+                // не больше двух пачек на поток, чтобы память не зависела от числа пользователей
+                if (inFlight.size() >= threads * 2) {
+                    checkpoint(current, await(inFlight.removeFirst()));
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                checkpoint(current, await(inFlight.removeFirst()));
+            }
+            // все пачки сохранены, отметки изменений больше не нужны; после прерванного прохода они остаются,
+            // потому что отменённая пачка может ещё сохраняться
+            synchronized (changedAt) {
+                changedAt.clear();
+            }
+            precomputedRepository.finishSweep(current.sweepId, SweepStatus.FINISHED);
+            current.finishedAt = Instant.now();
+            logger.info("Предрасчёт рекомендаций {} завершён: пользователей={}, {} польз./с",
+                    current.sweepId, current.usersDone, Math.round(current.usersPerSecond()));
+        } catch (RuntimeException e) {
+            // отметка уже сохранена: следующий запуск продолжит с последней целиком сохранённой пачки
+            logger.error("Предрасчёт рекомендаций {} прерван после пользователя {}", current.sweepId, current.lastUserId, e);
+        } finally {
+            inFlight.forEach(future -> future.cancel(true));
+        }
+    }
+
+    /**
+     * Запоминает изменившихся пользователей раньше, чем их заранее вычисленные рекомендации будут удалены:
+     * пачка, сохранённая после удаления, увидит отметку и удалит их строки сама.
+     */
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onUserFactsChanged(UserFactsChanged event) {
+        synchronized (changedAt) {
+            long sequence = ++changeSequence;
+            for (UUID userId : event.userIds()) {
+                changedAt.put(userId, sequence);
+            }
+        }
+    }
+
+    /**
+     * Состояние текущего или последнего прохода для /management/precompute.
+     */
+    public Map<String, Object> status() {
+        Progress current = progress;
+        Map<String, Object> body = new LinkedHashMap<>();
+        if (current == null) {
+            body.put("running", false);
+            return body;
+        }
+        body.put("sweep_id", current.sweepId);
+        body.put("running", current.finishedAt == null);
+        body.put("started_at", current.startedAt.toString());
+        body.put("finished_at", current.finishedAt != null ? current.finishedAt.toString() : null);
+        body.put("users_done", current.usersDone);
+        body.put("users_per_second", Math.round(current.usersPerSecond()));
+        body.put("last_user_id", current.lastUserId);
+        return body;
+    }
+
+    private Progress begin(long rulesHash) {
+        Optional<Sweep> running = precomputedRepository.findRunningSweep();
+        if (running.isPresent()) {
+            Sweep sweep = running.get();
+            if (sweep.rulesHash() == rulesHash) {
+                return new Progress(sweep.id(), sweep.lastUserId(), sweep.usersDone());
+            }
+            // правила сменились: результаты незавершённого прохода всё равно придётся пересчитать
+            precomputedRepository.finishSweep(sweep.id(), SweepStatus.ABANDONED);
+        }
+        return new Progress(precomputedRepository.startSweep(rulesHash), null, 0);
+    }
+
+    private Chunk processChunk(List<UUID> userIds, RuleRegistry.RuleSnapshot rules, long sweepId) {
+        long started;
+        synchronized (changedAt) {
+            started = changeSequence;
+        }
+        Map<UUID, UserFactSnapshot> facts = recommendationsRepository.loadFacts(userIds);
+        Map<UUID, List<RecommendationDTO>> results = new HashMap<>(userIds.size() * 2);
+        for (UUID userId : userIds) {
+            UserFactSnapshot snapshot = facts.get(userId);
+            results.put(userId, snapshot != null ? engine.recommend(snapshot, rules.compiled(), false) : List.of());
+        }
+        synchronized (changedAt) {
+            results.keySet().removeIf(userId -> changedAt.getOrDefault(userId, 0L) > started);
+        }
+        precomputedRepository.saveAll(results, rules.fingerprint(), sweepId);
+        // факты могли измениться во время записи, уже после удаления строк обработчиком события
+        List<UUID> stale = new ArrayList<>();
+        synchronized (changedAt) {
+            for (UUID userId : results.keySet()) {
+                if (changedAt.getOrDefault(userId, 0L) > started) {
+                    stale.add(userId);
+                }
+            }
+        }
+        if (!stale.isEmpty()) {
+            precomputedRepository.deleteAll(stale);
+        }
+        return new Chunk(userIds.get(userIds.size() - 1), userIds.size());
+    }
+
+    private void checkpoint(Progress current, Chunk chunk) {
+        current.lastUserId = chunk.lastUserId();
+        current.usersDone += chunk.size();
+        precomputedRepository.saveProgress(current.sweepId, current.lastUserId, current.usersDone);
+        usersCounter.increment(chunk.size());
+    }
+
+    private static Chunk await(Future<Chunk> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Предрасчёт рекомендаций прерван");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : new IllegalStateException(e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private record Chunk(UUID lastUserId, int size) {
+    }
+
+    private static final class Progress {
+        private final long sweepId;
+        private final Instant startedAt = Instant.now();
+        private final long usersAtStart;
+        private volatile UUID lastUserId;
+        private volatile long usersDone;
+        private volatile Instant finishedAt;
+
+        private Progress(long sweepId, UUID lastUserId, long usersDone) {
+            this.sweepId = sweepId;
+            this.lastUserId = lastUserId;
+            this.usersDone = usersDone;
+            this.usersAtStart = usersDone;
+        }
+
+        double usersPerSecond() {
+            Instant end = finishedAt != null ? finishedAt : Instant.now();
+            long millis = Math.max(1, Duration.between(startedAt, end).toMillis());
+            return (usersDone - usersAtStart) * 1000.0 / millis;
+        }
+    }
+}
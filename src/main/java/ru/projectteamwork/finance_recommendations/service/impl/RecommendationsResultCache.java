@@ -0,0 +1,292 @@
+package ru.projectteamwork.finance_recommendations.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import ru.projectteamwork.finance_recommendations.domain.service.RuleRegistry;
+import ru.projectteamwork.finance_recommendations.dto.RecommendationDTO;
+import ru.projectteamwork.finance_recommendations.exception.DeadlineExceededException;
+import ru.projectteamwork.finance_recommendations.repository.RequestDeadline;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Кеш готовых рекомендаций поверх "recommendationsCache".
+ * Одновременные промахи по одному пользователю объединяются в одно вычисление.
+ * После мягкого TTL вызывающий сразу получает сохранённый результат, а пересчёт идёт в фоне;
+ * после жёсткого TTL результат считается устаревшим и вычисляется заново синхронно.
+ * Результат, вычисленный на прежней версии правил, пересчитывается сразу, независимо от TTL.
+ */
+@Component
+public class RecommendationsResultCache {
+
+    public static final String CACHE_NAME = "recommendationsCache";
+
+    private final Logger logger = LoggerFactory.getLogger(RecommendationsResultCache.class);
+
+    private final Cache cache;
+    private final RuleRegistry ruleRegistry;
+    private final long softTtlNanos;
+    private final long hardTtlNanos;
+    private final boolean staleWhileRevalidate;
+    private final Map<UUID, CompletableFuture<List<RecommendationDTO>>> inFlight = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor refreshExecutor;
+    private final Counter fresh;
+    private final Counter stale;
+    private final Counter miss;
+    private final Counter coalesced;
+    private final Counter outdated;
+
+    public RecommendationsResultCache(CacheManager cacheManager,
+                                      RuleRegistry ruleRegistry,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${recommendations.cache.soft-ttl-ms:60000}") long softTtlMs,
+                                      @Value("${recommendations.cache.hard-ttl-ms:300000}") long hardTtlMs,
+                                      @Value("${recommendations.cache.stale-while-revalidate:true}") boolean staleWhileRevalidate,
+                                      @Value("${recommendations.cache.refresh-threads:2}") int refreshThreads,
+                                      @Value("${recommendations.cache.refresh-queue-capacity:1000}") int refreshQueueCapacity) {
+        this.cache = Objects.requireNonNull(cacheManager.getCache(CACHE_NAME), "Кеш " + CACHE_NAME + " не настроен");
+        this.ruleRegistry = ruleRegistry;
+        this.softTtlNanos = TimeUnit.MILLISECONDS.toNanos(softTtlMs);
+        this.hardTtlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(softTtlMs, hardTtlMs));
+        this.staleWhileRevalidate = staleWhileRevalidate;
+        this.refreshExecutor = new ThreadPoolExecutor(refreshThreads, refreshThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, refreshQueueCapacity)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "recommendations-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.fresh = requestCounter(meterRegistry, "fresh");
+        this.stale = requestCounter(meterRegistry, "stale");
+        this.miss = requestCounter(meterRegistry, "miss");
+        this.coalesced = requestCounter(meterRegistry, "coalesced");
+        this.outdated = requestCounter(meterRegistry, "outdated");
+    }
+
+    public List<RecommendationDTO> get(UUID userId, Loader loader) {
+        return get(userId, loader, null);
+    }
+
+    /**
+     * Синхронное вычисление и ожидание чужого вычисления ограничены deadline; фоновый пересчёт — нет.
+     *
+     * @throws DeadlineExceededException если срок истёк раньше, чем получен результат; такой результат не сохраняется
+     */
+    public List<RecommendationDTO> get(UUID userId, Loader loader, RequestDeadline deadline) {
+        CachedRecommendations cached = cache.get(userId, CachedRecommendations.class);
+        if (cached != null && cached.ruleEpoch() != ruleRegistry.currentEpoch()) {
+            // правила изменились: факты пользователя при этом актуальны, обходить их кеш не нужно
+            outdated.increment();
+            return load(userId, loader, false, deadline);
+        }
+        if (cached != null) {
+            long age = System.nanoTime() - cached.computedAt();
+            if (age < softTtlNanos) {
+                fresh.increment();
+                return cached.recommendations();
+            }
+            if (staleWhileRevalidate && age < hardTtlNanos) {
+                stale.increment();
+                refreshAsync(userId, loader);
+                return cached.recommendations();
+            }
+        }
+        return load(userId, loader, cached != null, deadline);
+    }
+
+    /**
+     * Последний сохранённый результат независимо от TTL и версии правил, или null.
+     */
+    public List<RecommendationDTO> peek(UUID userId) {
+        CachedRecommendations cached = cache.get(userId, CachedRecommendations.class);
+        return cached != null ? cached.recommendations() : null;
+    }
+
+    /**
+     * Состояние сохранённого результата без обращения к нему: absent, fresh, stale, expired или outdated.
+     */
+    public String describe(UUID userId) {
+        CachedRecommendations cached = cache.get(userId, CachedRecommendations.class);
+        if (cached == null) {
+            return "absent";
+        }
+        if (cached.ruleEpoch() != ruleRegistry.currentEpoch()) {
+            return "outdated";
+        }
+        long age = System.nanoTime() - cached.computedAt();
+        if (age < softTtlNanos) {
+            return "fresh";
+        }
+        return staleWhileRevalidate && age < hardTtlNanos ? "stale" : "expired";
+    }
+
+    private List<RecommendationDTO> load(UUID userId, Loader loader, boolean revalidate, RequestDeadline deadline) {
+        while (true) {
+            CompletableFuture<List<RecommendationDTO>> own = new CompletableFuture<>();
+            CompletableFuture<List<RecommendationDTO>> existing = inFlight.putIfAbsent(userId, own);
+            if (existing == null) {
+                miss.increment();
+                return compute(userId, loader, revalidate, deadline, own);
+            }
+            coalesced.increment();
+            try {
+                return deadline != null ? join(existing, deadline) : join(existing);
+            } catch (Abandoned e) {
+                // чужой расчёт не состоялся или упёрся в чужой срок: пользователь уже убран из inFlight, считаем сами
+            }
+        }
+    }
+
+    /**
+     * Сбрасывает результат пользователя и, если передан {@code recompute}, пересчитывает его в фоне.
+     * Вычисление, начатое до сброса, могло прочитать старые факты, поэтому после его завершения
+     * сброс повторяется.
+     */
+    public void invalidate(UUID userId, Runnable evictInputs, Loader recompute) {
+        evictInputs.run();
+        cache.evict(userId);
+        CompletableFuture<List<RecommendationDTO>> running = inFlight.get(userId);
+        if (running != null) {
+            running.whenComplete((result, error) -> {
+                evictInputs.run();
+                cache.evict(userId);
+            });
+        } else if (recompute != null) {
+            refreshAsync(userId, recompute);
+        }
+    }
+
+    private void refreshAsync(UUID userId, Loader loader) {
+        CompletableFuture<List<RecommendationDTO>> own = new CompletableFuture<>();
+        if (inFlight.putIfAbsent(userId, own) != null) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    compute(userId, loader, true, null, own);
+                } catch (RuntimeException e) {
+                    // ошибка уже записана в журнал и передана ожидающим
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // при перегрузке фоновый пересчёт пропускается: до жёсткого TTL отдаётся сохранённый результат,
+            // а тот, кто успел присоединиться к пересчёту, вычисляет рекомендации сам
+            inFlight.remove(userId, own);
+            own.completeExceptionally(new Abandoned());
+        }
+    }
+
+    /**
+     * Вычисляет результат для владельца расчёта и передаёт его присоединившимся. Истёкший срок владельца
+     * к ним не относится: у них свой срок или его нет вовсе, поэтому они получают {@link Abandoned}
+     * и считают сами, а исключение о сроке достаётся только владельцу.
+     */
+    private List<RecommendationDTO> compute(UUID userId, Loader loader, boolean revalidate, RequestDeadline deadline,
+                                            CompletableFuture<List<RecommendationDTO>> target) {
+        List<RecommendationDTO> recommendations;
+        try {
+            // эпоха читается до вычисления: если правила сменятся во время расчёта, результат будет пересчитан
+            long ruleEpoch = ruleRegistry.currentEpoch();
+            recommendations = loader.load(revalidate, deadline);
+            cache.put(userId, new CachedRecommendations(recommendations, System.nanoTime(), ruleEpoch));
+        } catch (DeadlineExceededException e) {
+            inFlight.remove(userId, target);
+            target.completeExceptionally(new Abandoned());
+            throw e;
+        } catch (RuntimeException e) {
+            logger.error("Ошибка вычисления рекомендаций для пользователя {}", userId, e);
+            inFlight.remove(userId, target);
+            target.completeExceptionally(e);
+            throw e;
+        }
+        // сначала убрать из inFlight: иначе повторная попытка ожидающего снова найдёт завершённый расчёт
+        inFlight.remove(userId, target);
+        target.complete(recommendations);
+        return recommendations;
+    }
+
+    private static List<RecommendationDTO> join(CompletableFuture<List<RecommendationDTO>> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw e;
+        }
+    }
+
+    private static List<RecommendationDTO> join(CompletableFuture<List<RecommendationDTO>> future,
+                                                RequestDeadline deadline) {
+        try {
+            return future.get(deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new DeadlineExceededException("Срок запроса истёк в ожидании расчёта рекомендаций", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DeadlineExceededException("Ожидание расчёта рекомендаций прервано", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new CompletionException(e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    private static Counter requestCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("recommendations.cache.requests")
+                .description("Обращения к кешу рекомендаций по результату")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Расчёт, к которому присоединились, не будет выполнен; ожидающий должен вычислить результат сам.
+     */
+    private static final class Abandoned extends RuntimeException {
+        private Abandoned() {
+            super(null, null, false, false);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Loader {
+        /**
+         * @param revalidate true, если пересчитывается устаревший результат и промежуточные кеши нужно обойти
+         * @param deadline   срок запроса, по которому идёт вычисление; null при фоновом пересчёте
+         */
+        List<RecommendationDTO> load(boolean revalidate, RequestDeadline deadline);
+    }
+
+    /**
+     * Сохранённый результат вместе с моментом вычисления по {@link System#nanoTime()}
+     * и версией правил, на которой он получен.
+     */
+    public record CachedRecommendations(List<RecommendationDTO> recommendations, long computedAt, long ruleEpoch) {
+    }
+}
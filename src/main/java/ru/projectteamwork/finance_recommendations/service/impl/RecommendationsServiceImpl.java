@@ -1,70 +1,197 @@
 package ru.projectteamwork.finance_recommendations.service.impl;
 
-import org.springframework.cache.annotation.Cacheable;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
-import ru.projectteamwork.finance_recommendations.domain.service.RuleService;
-import ru.projectteamwork.finance_recommendations.domain.service.RuleStatService;
+import ru.projectteamwork.finance_recommendations.domain.service.RuleRegistry;
 import ru.projectteamwork.finance_recommendations.dto.RecommendationDTO;
-import ru.projectteamwork.finance_recommendations.evaluator.DynamicRuleEvaluator;
+import ru.projectteamwork.finance_recommendations.dto.RecommendationTrace;
+import ru.projectteamwork.finance_recommendations.dto.RecommendationsResult;
+import ru.projectteamwork.finance_recommendations.evaluator.RecommendationEngine;
+import ru.projectteamwork.finance_recommendations.exception.DeadlineExceededException;
+import ru.projectteamwork.finance_recommendations.repository.PrecomputedRecommendationsRepository;
 import ru.projectteamwork.finance_recommendations.repository.RecommendationsRepository;
-import ru.projectteamwork.finance_recommendations.rules.RecommendationsRuleSet;
+import ru.projectteamwork.finance_recommendations.repository.RequestDeadline;
+import ru.projectteamwork.finance_recommendations.repository.UserFactSnapshot;
+import ru.projectteamwork.finance_recommendations.repository.UserFactsChanged;
 import ru.projectteamwork.finance_recommendations.service.RecommendationsService;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 
 @Service
 public class RecommendationsServiceImpl implements RecommendationsService {
-    private final List<RecommendationsRuleSet> rules;
-    private final RuleService ruleService;
-    private final DynamicRuleEvaluator evaluator;
-    private final RuleStatService ruleStatService;
+    private final RecommendationsRepository recommendationsRepository;
+    private final RecommendationEngine engine;
+    private final RecommendationsResultCache resultCache;
+    private final PrecomputedRecommendationsRepository precomputedRepository;
+    private final RuleRegistry ruleRegistry;
+    private final boolean recomputeOnChange;
+    private final boolean servePrecomputed;
+    private final boolean precomputedInUse;
+    private final Duration precomputedMaxAge;
+    private final Duration defaultDeadline;
+    private final Duration maxDeadline;
+    private final Counter precomputedHit;
+    private final Counter precomputedMiss;
+    private final Counter deadlineExceeded;
+    private final Logger logger = LoggerFactory.getLogger(RecommendationsServiceImpl.class);
 
-    public RecommendationsServiceImpl(List<RecommendationsRuleSet> rules,
-                                      RuleService ruleService,
-                                      RecommendationsRepository recommendationsRepository,
-                                      RuleStatService ruleStatService) {
-        this.rules = rules;
-        this.ruleService = ruleService;
-        this.evaluator = new DynamicRuleEvaluator(recommendationsRepository);
-        this.ruleStatService = ruleStatService;
+    public RecommendationsServiceImpl(RecommendationsRepository recommendationsRepository,
+                                      RecommendationEngine engine,
+                                      RecommendationsResultCache resultCache,
+                                      PrecomputedRecommendationsRepository precomputedRepository,
+                                      RuleRegistry ruleRegistry,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${recommendations.change-feed.recompute:false}") boolean recomputeOnChange,
+                                      @Value("${recommendations.serving.mode:live}") String servingMode,
+                                      @Value("${recommendations.precompute.enabled:false}") boolean precomputeEnabled,
+                                      @Value("${recommendations.precompute.max-age-ms:86400000}") long precomputedMaxAgeMs,
+                                      @Value("${recommendations.deadline.default-ms:1000}") long defaultDeadlineMs,
+                                      @Value("${recommendations.deadline.max-ms:10000}") long maxDeadlineMs) {
+        this.recommendationsRepository = recommendationsRepository;
+        this.engine = engine;
+        this.resultCache = resultCache;
+        this.precomputedRepository = precomputedRepository;
+        this.ruleRegistry = ruleRegistry;
+        this.recomputeOnChange = recomputeOnChange;
+        this.servePrecomputed = "precomputed".equalsIgnoreCase(servingMode);
+        // без предрасчёта и без выдачи из него таблица пуста, удалять из неё нечего
+        this.precomputedInUse = precomputeEnabled || servePrecomputed;
+        this.precomputedMaxAge = Duration.ofMillis(precomputedMaxAgeMs);
+        this.defaultDeadline = Duration.ofMillis(defaultDeadlineMs);
+        this.maxDeadline = Duration.ofMillis(Math.max(defaultDeadlineMs, maxDeadlineMs));
+        this.precomputedHit = precomputedCounter(meterRegistry, "hit");
+        this.precomputedMiss = precomputedCounter(meterRegistry, "miss");
+        this.deadlineExceeded = Counter.builder("recommendations.deadline.exceeded")
+                .description("Запросы рекомендаций, у которых срок истёк до окончания расчёта")
+                .register(meterRegistry);
     }
 
     @Override
-    @Cacheable(value = "recommendationsCache", key = "#userId")
     public List<RecommendationDTO> getRecommendationsForUser(String userId) {
-        List<RecommendationDTO> staticRecommendations = new ArrayList<>();
-        List<RecommendationDTO> dynamicRecommendations = new ArrayList<>();
+        UUID userUUID;
+        try {
+            userUUID = UUID.fromString(userId);
+        } catch (IllegalArgumentException e) {
+            logger.error("Некорректная UUID строка: {}", userId, e);
+            return List.of();
+        }
+
+        return servedPrecomputed(userUUID, null).orElseGet(() -> resultCache.get(userUUID, loader(userUUID)));
+    }
 
-        for (RecommendationsRuleSet rule : rules) {
-            rule.checkRule(userId).ifPresent(staticRecommendations::add);
+    @Override
+    public RecommendationsResult getRecommendationsForUser(String userId, Duration budget) {
+        Duration limited = budget == null ? defaultDeadline : budget.compareTo(maxDeadline) > 0 ? maxDeadline : budget;
+        RequestDeadline deadline = RequestDeadline.after(limited);
+        UUID userUUID;
+        try {
+            userUUID = UUID.fromString(userId);
+        } catch (IllegalArgumentException e) {
+            logger.error("Некорректная UUID строка: {}", userId, e);
+            return RecommendationsResult.complete(List.of());
         }
 
-        ruleService.findAllEntities().forEach(dynamicRule -> {
-            if (evaluator.evaluate(dynamicRule, userId)) {
-                ruleStatService.inc(dynamicRule.getId());
-                dynamicRecommendations.add(new RecommendationDTO(
-                        dynamicRule.getProductName(),
-                        dynamicRule.getProductId().toString(),
-                        dynamicRule.getProductText()
-                ));
+        try {
+            Optional<List<RecommendationDTO>> precomputed = servedPrecomputed(userUUID, deadline);
+            if (precomputed.isPresent()) {
+                return RecommendationsResult.complete(precomputed.get());
             }
-        });
+            return RecommendationsResult.complete(resultCache.get(userUUID, loader(userUUID), deadline));
+        } catch (DeadlineExceededException e) {
+            deadlineExceeded.increment();
+            List<RecommendationDTO> known = e.getRecommendations() != null
+                    ? e.getRecommendations()
+                    : resultCache.peek(userUUID);
+            return new RecommendationsResult(known != null ? known : List.of(), true);
+        }
+    }
 
-        Set<String> recommendationsID = new HashSet<>();
-        List<RecommendationDTO> combinedRecommendations = new ArrayList<>();
+    @Override
+    public RecommendationTrace explain(UUID userId) {
+        long started = System.nanoTime();
+        RecommendationTrace trace = new RecommendationTrace(userId);
+        trace.setResult_cache(resultCache.describe(userId));
+        UserFactSnapshot facts = recommendationsRepository.loadFacts(userId, trace);
+        trace.setRecommendations(engine.explain(facts, trace));
+        trace.setTime_us(System.nanoTime() - started);
+        return trace;
+    }
 
-        for (RecommendationDTO recommendation : staticRecommendations) {
-            if (recommendationsID.add(recommendation.getId())) {
-                combinedRecommendations.add(recommendation);
-            }
+    private Optional<List<RecommendationDTO>> servedPrecomputed(UUID userId, RequestDeadline deadline) {
+        if (!servePrecomputed) {
+            return Optional.empty();
+        }
+        Optional<List<RecommendationDTO>> precomputed = findPrecomputed(userId, deadline);
+        (precomputed.isPresent() ? precomputedHit : precomputedMiss).increment();
+        return precomputed;
+    }
+
+    /**
+     * Заранее вычисленный результат годится, только если он получен на текущем наборе правил и не старше max-age;
+     * иначе рекомендации вычисляются на лету.
+     */
+    private Optional<List<RecommendationDTO>> findPrecomputed(UUID userId, RequestDeadline deadline) {
+        try {
+            long rulesHash = ruleRegistry.current().fingerprint();
+            Instant oldest = Instant.now().minus(precomputedMaxAge);
+            return precomputedRepository.find(userId, deadline)
+                    .filter(entry -> entry.rulesHash() == rulesHash && entry.computedAt().isAfter(oldest))
+                    .map(PrecomputedRecommendationsRepository.Entry::recommendations);
+        } catch (DataAccessException e) {
+            logger.warn("Не удалось прочитать заранее вычисленные рекомендации: userId={}", userId, e);
+            return Optional.empty();
         }
+    }
 
-        for (RecommendationDTO recommendation : dynamicRecommendations) {
-            if (recommendationsID.add(recommendation.getId())) {
-                combinedRecommendations.add(recommendation);
+    /**
+     * Сбрасывает кеши только тех пользователей, у которых появились новые транзакции.
+     */
+    @EventListener
+    public void onUserFactsChanged(UserFactsChanged event) {
+        if (precomputedInUse) {
+            try {
+                precomputedRepository.deleteAll(event.userIds());
+            } catch (DataAccessException e) {
+                logger.error("Не удалось удалить устаревшие заранее вычисленные рекомендации: users={}",
+                        event.userIds().size(), e);
             }
         }
+        for (UUID userId : event.userIds()) {
+            resultCache.invalidate(userId,
+                    () -> recommendationsRepository.evictFacts(userId),
+                    recomputeOnChange ? loader(userId) : null);
+        }
+    }
+
+    private RecommendationsResultCache.Loader loader(UUID userId) {
+        return (revalidate, deadline) -> {
+            if (revalidate) {
+                recommendationsRepository.evictFacts(userId);
+            }
+            if (deadline == null) {
+                return engine.recommend(recommendationsRepository.loadFacts(userId));
+            }
+            RecommendationsResult result = engine.recommend(recommendationsRepository.loadFacts(userId, deadline), deadline);
+            if (result.partial()) {
+                // неполный результат не должен попасть в кеш
+                throw new DeadlineExceededException("Срок запроса истёк при проверке правил", result.recommendations());
+            }
+            return result.recommendations();
+        };
+    }
 
-        return combinedRecommendations;
+    private static Counter precomputedCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("recommendations.precomputed.requests")
+                .description("Обращения к заранее вычисленным рекомендациям по результату")
+                .tag("result", result)
+                .register(meterRegistry);
     }
-}
\ No newline at end of file
+}
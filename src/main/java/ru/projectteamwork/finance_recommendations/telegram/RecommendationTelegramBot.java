@@ -1,5 +1,7 @@
 package ru.projectteamwork.finance_recommendations.telegram;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
@@ -7,12 +9,22 @@ import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
 import org.telegram.telegrambots.util.WebhookUtils;
+import ru.projectteamwork.finance_recommendations.repository.UserLookupRepository;
 import ru.projectteamwork.finance_recommendations.service.RecommendationsService;
 
+import java.util.List;
+import java.util.UUID;
+
 @Component
 public class RecommendationTelegramBot extends TelegramLongPollingBot {
 
+    private static final Logger logger = LoggerFactory.getLogger(RecommendationTelegramBot.class);
+
+    private static final int SUGGESTIONS_LIMIT = 5;
+
     private final RecommendationsService recommendationsService;
+    private final UserLookupRepository userLookupRepository;
+    private final TelegramUpdateDispatcher dispatcher;
 
     private final String botUsername;
     private final String botToken;
@@ -20,9 +32,13 @@ public class RecommendationTelegramBot extends TelegramLongPollingBot {
     // 👇 конструктор, где Spring внедрит зависимости
     public RecommendationTelegramBot(
             RecommendationsService recommendationsService,
+            UserLookupRepository userLookupRepository,
+            TelegramUpdateDispatcher dispatcher,
             @Value("${telegram.bot.username}") String botUsername,
             @Value("${telegram.bot.token}") String botToken) {
         this.recommendationsService = recommendationsService;
+        this.userLookupRepository = userLookupRepository;
+        this.dispatcher = dispatcher;
         this.botUsername = botUsername;
         this.botToken = botToken;
     }
@@ -39,6 +55,26 @@ public class RecommendationTelegramBot extends TelegramLongPollingBot {
 
     @Override
     public void onUpdateReceived(Update update) {
+        if (!update.hasMessage() || !update.getMessage().hasText()) {
+            return;
+        }
+        long chatId = update.getMessage().getChatId();
+        // Поток long polling только распределяет обновления, обработка идёт в пуле диспетчера
+        switch (dispatcher.dispatch(chatId, () -> handle(update))) {
+            case RATE_LIMITED:
+                if (dispatcher.shouldNotifyRateLimited(chatId)) {
+                    sendAsync(String.valueOf(chatId), "Слишком много запросов, попробуйте чуть позже.");
+                }
+                break;
+            case OVERLOADED:
+                sendAsync(String.valueOf(chatId), "Бот сейчас перегружен, попробуйте позже.");
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void handle(Update update) {
         if (update.hasMessage() && update.getMessage().hasText()) {
             String text = update.getMessage().getText();
             String chatId = update.getMessage().getChatId().toString();
@@ -51,10 +87,26 @@ public class RecommendationTelegramBot extends TelegramLongPollingBot {
                 }
 
                 String name = parts[1].trim();
-                var recommendations = recommendationsService.getRecommendationsForUser(name);
+                List<UUID> userIds = userLookupRepository.findUserIdsByFullName(name);
+                if (userIds.isEmpty()) {
+                    List<String> suggestions = userLookupRepository.suggestFullNames(name, SUGGESTIONS_LIMIT);
+                    if (suggestions.isEmpty()) {
+                        send(chatId, "Пользователь не найден.");
+                    } else {
+                        send(chatId, "Пользователь не найден. Возможно, вы имели в виду:\n- "
+                                + String.join("\n- ", suggestions));
+                    }
+                    return;
+                }
+                if (userIds.size() > 1) {
+                    send(chatId, "Найдено несколько пользователей с таким именем, уточните запрос.");
+                    return;
+                }
+
+                var recommendations = recommendationsService.getRecommendationsForUser(userIds.get(0).toString());
 
                 if (recommendations.isEmpty()) {
-                    send(chatId, "Пользователь не найден или нет рекомендаций.");
+                    send(chatId, "Для пользователя нет рекомендаций.");
                 } else {
                     StringBuilder response = new StringBuilder("Рекомендации для " + name + ":\n");
                     recommendations.forEach(r ->
@@ -79,6 +131,21 @@ public class RecommendationTelegramBot extends TelegramLongPollingBot {
         }
     }
 
+    private void sendAsync(String chatId, String text) {
+        try {
+            executeAsync(SendMessage.builder()
+                    .chatId(chatId)
+                    .text(text)
+                    .build())
+                    .exceptionally(e -> {
+                        logger.warn("Не удалось отправить сообщение в чат {}", chatId, e);
+                        return null;
+                    });
+        } catch (Exception e) {
+            logger.warn("Не удалось отправить сообщение в чат {}", chatId, e);
+        }
+    }
+
     public void clearWebhook() throws TelegramApiRequestException {
         try {
             WebhookUtils.clearWebhook(this);
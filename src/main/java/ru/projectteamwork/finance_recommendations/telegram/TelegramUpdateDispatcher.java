@@ -0,0 +1,171 @@
+package ru.projectteamwork.finance_recommendations.telegram;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Выполняет обработку обновлений Telegram вне потока long polling.
+ * Чат всегда попадает в один и тот же однопоточный обработчик, поэтому сообщения
+ * одного чата обрабатываются по порядку. Очереди ограничены, а каждому чату
+ * выделено ведро токенов: при переполнении задача не ставится в очередь.
+ */
+@Component
+public class TelegramUpdateDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(TelegramUpdateDispatcher.class);
+
+    public enum Admission {
+        ACCEPTED,
+        RATE_LIMITED,
+        OVERLOADED
+    }
+
+    private final ThreadPoolExecutor[] workers;
+    private final Cache<Long, TokenBucket> buckets;
+    private final int bucketCapacity;
+    private final double refillPerNano;
+    private final Timer processingTimer;
+    private final Timer queueWaitTimer;
+    private final Counter rateLimited;
+    private final Counter overloaded;
+
+    public TelegramUpdateDispatcher(@Value("${telegram.bot.workers:4}") int workerCount,
+                                    @Value("${telegram.bot.queue-capacity:100}") int queueCapacity,
+                                    @Value("${telegram.bot.rate-limit.capacity:5}") int bucketCapacity,
+                                    @Value("${telegram.bot.rate-limit.refill-per-minute:20}") int refillPerMinute,
+                                    MeterRegistry meterRegistry) {
+        this.workers = new ThreadPoolExecutor[Math.max(1, workerCount)];
+        for (int i = 0; i < workers.length; i++) {
+            String name = "telegram-worker-" + i;
+            workers[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, name);
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    new ThreadPoolExecutor.AbortPolicy());
+        }
+        this.buckets = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofMinutes(30))
+                .maximumSize(100_000)
+                .build();
+        this.bucketCapacity = bucketCapacity;
+        this.refillPerNano = refillPerMinute / (double) TimeUnit.MINUTES.toNanos(1);
+
+        Gauge.builder("telegram.updates.queue.depth", this, TelegramUpdateDispatcher::queueDepth)
+                .description("Количество обновлений Telegram, ожидающих обработки")
+                .register(meterRegistry);
+        this.processingTimer = Timer.builder("telegram.updates.processing")
+                .description("Время обработки обновления Telegram")
+                .register(meterRegistry);
+        this.queueWaitTimer = Timer.builder("telegram.updates.queue.wait")
+                .description("Время ожидания обновления Telegram в очереди")
+                .register(meterRegistry);
+        this.rateLimited = rejectedCounter(meterRegistry, "rate_limit");
+        this.overloaded = rejectedCounter(meterRegistry, "overload");
+    }
+
+    public Admission dispatch(long chatId, Runnable task) {
+        TokenBucket bucket = buckets.get(chatId, id -> new TokenBucket(bucketCapacity));
+        if (!bucket.tryAcquire(bucketCapacity, refillPerNano)) {
+            rateLimited.increment();
+            return Admission.RATE_LIMITED;
+        }
+        long enqueued = System.nanoTime();
+        try {
+            workers[Math.floorMod(Long.hashCode(chatId), workers.length)].execute(() -> {
+                long started = System.nanoTime();
+                queueWaitTimer.record(started - enqueued, TimeUnit.NANOSECONDS);
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger.error("Ошибка обработки обновления Telegram для чата {}", chatId, e);
+                } finally {
+                    processingTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                }
+            });
+            return Admission.ACCEPTED;
+        } catch (RejectedExecutionException e) {
+            overloaded.increment();
+            return Admission.OVERLOADED;
+        }
+    }
+
+    /**
+     * Сообщать ли чату об ограничении: true только для первого отказа подряд,
+     * чтобы не отвечать на каждое сообщение сверх лимита.
+     */
+    public boolean shouldNotifyRateLimited(long chatId) {
+        TokenBucket bucket = buckets.getIfPresent(chatId);
+        return bucket != null && bucket.markNotified();
+    }
+
+    public int queueDepth() {
+        int depth = 0;
+        for (ThreadPoolExecutor worker : workers) {
+            depth += worker.getQueue().size();
+        }
+        return depth;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ThreadPoolExecutor worker : workers) {
+            worker.shutdownNow();
+        }
+    }
+
+    private static Counter rejectedCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("telegram.updates.rejected")
+                .description("Количество отклонённых обновлений Telegram")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    private static final class TokenBucket {
+        private double tokens;
+        private long refilledAt;
+        private boolean notified;
+
+        private TokenBucket(int capacity) {
+            this.tokens = capacity;
+            this.refilledAt = System.nanoTime();
+        }
+
+        synchronized boolean tryAcquire(int capacity, double refillPerNano) {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * refillPerNano);
+            refilledAt = now;
+            if (tokens >= 1.0) {
+                tokens -= 1.0;
+                notified = false;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized boolean markNotified() {
+            if (notified) {
+                return false;
+            }
+            notified = true;
+            return true;
+        }
+    }
+}
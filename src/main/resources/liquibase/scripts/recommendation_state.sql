@@ -0,0 +1,44 @@
+--liquibase formatted sql
+
+--changeset finance-recommendations:user-fact-rollup
+CREATE TABLE user_fact_rollup (
+    user_id      UUID        NOT NULL,
+    product_type VARCHAR(64) NOT NULL,
+    tx_type      VARCHAR(64) NOT NULL,
+    sum_amount   BIGINT      NOT NULL,
+    tx_count     BIGINT      NOT NULL,
+    last_tx_id   BIGINT      NOT NULL,
+    CONSTRAINT pk_user_fact_rollup PRIMARY KEY (user_id, product_type, tx_type)
+);
+
+CREATE TABLE rollup_checkpoint (
+    name       VARCHAR(64) PRIMARY KEY,
+    last_tx_id BIGINT      NOT NULL
+);
+
+INSERT INTO rollup_checkpoint (name, last_tx_id) VALUES ('user_fact_rollup', 0);
+
+--changeset finance-recommendations:precomputed-recommendation
+CREATE TABLE precomputed_recommendation (
+    user_id         UUID      PRIMARY KEY,
+    recommendations TEXT      NOT NULL,
+    rules_hash      BIGINT    NOT NULL,
+    sweep_id        BIGINT    NOT NULL,
+    computed_at     TIMESTAMP NOT NULL
+);
+
+CREATE TABLE precompute_sweep (
+    id           BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY NOT NULL,
+    status       VARCHAR(16) NOT NULL,
+    rules_hash   BIGINT      NOT NULL,
+    started_at   TIMESTAMP   NOT NULL,
+    finished_at  TIMESTAMP,
+    last_user_id UUID,
+    users_done   BIGINT      NOT NULL DEFAULT 0
+);
+
+--changeset finance-recommendations:builtin-rule-stat
+CREATE TABLE builtin_rule_stat (
+    rule_id    UUID   PRIMARY KEY,
+    fire_count BIGINT NOT NULL DEFAULT 0
+);
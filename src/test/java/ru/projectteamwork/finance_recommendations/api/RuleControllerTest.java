@@ -0,0 +1,49 @@
+package ru.projectteamwork.finance_recommendations.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import ru.projectteamwork.finance_recommendations.domain.service.RuleService;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class RuleControllerTest {
+
+    private final MockMvc mvc = MockMvcBuilders
+            .standaloneSetup(new RuleController(new RuleService(null, null, null, null), new ObjectMapper(), 1000, 20))
+            .build();
+
+    @Test
+    void ruleThatDoesNotCompileIsRejectedWithReason() throws Exception {
+        mvc.perform(post("/rule").contentType(MediaType.APPLICATION_JSON).content(rule("\"DEBIT\", \"DEPOSIT\", \"~\", \"100\"")))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Неизвестный оператор: ~"));
+        mvc.perform(post("/rule").contentType(MediaType.APPLICATION_JSON).content(rule("\"DEBIT\", \"DEPOSIT\", \">\", \"abc\"")))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Недопустимая константа: abc"));
+        mvc.perform(post("/rule").contentType(MediaType.APPLICATION_JSON).content(rule("\"DEBIT\"")))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Неверное количество аргументов для TRANSACTION_SUM_COMPARE: нужно 4, получено 1"));
+    }
+
+    @Test
+    void invalidSimulationCandidateIsRejectedWithReason() throws Exception {
+        mvc.perform(post("/rule/simulate").contentType(MediaType.APPLICATION_JSON).content(rule("\"DEBIT\", \"DEPOSIT\", \"~\", \"100\"")))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Неизвестный оператор: ~"));
+        mvc.perform(post("/rule/simulate").contentType(MediaType.APPLICATION_JSON).content(rule("\"DEBIT\", null, \">\", \"100\"")))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("Не указан аргумент 2 для TRANSACTION_SUM_COMPARE"));
+    }
+
+    private static String rule(String arguments) {
+        return """
+                {"product_name": "name", "product_id": "00000000-0000-0000-0000-000000000001", "product_text": "text",
+                 "rule": [{"query": "TRANSACTION_SUM_COMPARE", "arguments": [%s], "negate": false}]}
+                """.formatted(arguments);
+    }
+}
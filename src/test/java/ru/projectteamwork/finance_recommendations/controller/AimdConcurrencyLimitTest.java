@@ -0,0 +1,80 @@
+package ru.projectteamwork.finance_recommendations.controller;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AimdConcurrencyLimitTest {
+
+    @Test
+    void limitGrowsWhileFullyUsedAndSucceeding() {
+        AimdConcurrencyLimit limit = new AimdConcurrencyLimit(4, 1, 6, 0.5);
+
+        for (int round = 0; round < 50; round++) {
+            int acquired = acquireAll(limit);
+            assertThat(acquired).isEqualTo(limit.getLimit());
+            for (int i = 0; i < acquired; i++) {
+                limit.release(System.nanoTime(), false);
+            }
+        }
+
+        assertThat(limit.getLimit()).isEqualTo(6);
+        assertThat(limit.getInFlight()).isZero();
+    }
+
+    @Test
+    void limitDoesNotGrowWhenMostlyIdle() {
+        AimdConcurrencyLimit limit = new AimdConcurrencyLimit(4, 1, 6, 0.5);
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(limit.tryAcquire()).isTrue();
+            limit.release(System.nanoTime(), false);
+        }
+
+        assertThat(limit.getLimit()).isEqualTo(4);
+    }
+
+    @Test
+    void overloadShrinksLimitOncePerGeneration() {
+        AimdConcurrencyLimit limit = new AimdConcurrencyLimit(8, 1, 10, 0.5);
+
+        long firstGeneration = nanoTimeAfter(System.nanoTime());
+        assertThat(acquireAll(limit)).isEqualTo(8);
+        limit.release(firstGeneration, true);
+        assertThat(limit.getLimit()).isEqualTo(4);
+
+        // запросы, начатые до уменьшения, его не повторяют
+        for (int i = 0; i < 7; i++) {
+            limit.release(firstGeneration, true);
+        }
+        assertThat(limit.getLimit()).isEqualTo(4);
+        assertThat(limit.tryAcquire()).isTrue();
+        assertThat(limit.tryAcquire()).isTrue();
+        assertThat(limit.tryAcquire()).isTrue();
+        assertThat(limit.tryAcquire()).isTrue();
+        assertThat(limit.tryAcquire()).isFalse();
+
+        for (int generation = 0; generation < 4; generation++) {
+            limit.release(nanoTimeAfter(System.nanoTime()), true);
+        }
+        assertThat(limit.getLimit()).isEqualTo(1);
+        assertThat(limit.getInFlight()).isZero();
+    }
+
+    private static int acquireAll(AimdConcurrencyLimit limit) {
+        int acquired = 0;
+        while (limit.tryAcquire()) {
+            acquired++;
+        }
+        return acquired;
+    }
+
+    private static long nanoTimeAfter(long nanos) {
+        long now = System.nanoTime();
+        while (now - nanos <= 0) {
+            Thread.onSpinWait();
+            now = System.nanoTime();
+        }
+        return now;
+    }
+}
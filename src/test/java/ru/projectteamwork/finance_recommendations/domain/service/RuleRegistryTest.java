@@ -0,0 +1,65 @@
+package ru.projectteamwork.finance_recommendations.domain.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.projectteamwork.finance_recommendations.domain.DynamicRule;
+import ru.projectteamwork.finance_recommendations.domain.DynamicRuleQuery;
+import ru.projectteamwork.finance_recommendations.domain.enums.QueryType;
+import ru.projectteamwork.finance_recommendations.domain.repo.DynamicRuleRepository;
+import ru.projectteamwork.finance_recommendations.evaluator.RuleCompiler;
+import ru.projectteamwork.finance_recommendations.evaluator.RuleFixture;
+import ru.projectteamwork.finance_recommendations.rules.BuiltInRules;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RuleRegistryTest {
+
+    private final BuiltInRules builtInRules = new BuiltInRules();
+    private final RuleRegistry registry = new RuleRegistry(null, builtInRules, null, event -> {
+    });
+
+    @Test
+    void repeatedCreateEventDoesNotDuplicateRule() {
+        List<DynamicRule> rules = RuleFixture.rules(new Random(1), 2);
+        registry.onRuleCreated(created(rules.get(0)));
+        long epoch = registry.currentEpoch();
+
+        registry.onRuleCreated(created(rules.get(0)));
+        registry.onRuleCreated(created(rules.get(1)));
+
+        RuleRegistry.RuleSnapshot snapshot = registry.current();
+        assertThat(snapshot.rules()).extracting(DynamicRule::getId)
+                .containsExactly(rules.get(0).getId(), rules.get(1).getId());
+        assertThat(snapshot.responses()).hasSize(2);
+        assertThat(snapshot.compiled().size()).isEqualTo(builtInRules.compiled().size() + 2);
+        assertThat(snapshot.epoch()).isEqualTo(epoch + 1);
+    }
+
+    @Test
+    void storedRuleThatDoesNotCompileIsSkippedOnReload() {
+        List<DynamicRule> rules = RuleFixture.rules(new Random(2), 2);
+        DynamicRuleQuery broken = new DynamicRuleQuery();
+        broken.setQuery(QueryType.TRANSACTION_SUM_COMPARE);
+        broken.setArgumentsJson("[\"DEBIT\", \"DEPOSIT\", \"~\", \"abc\"]");
+        rules.get(1).addQuery(broken);
+        DynamicRuleRepository repo = mock(DynamicRuleRepository.class);
+        when(repo.findAll()).thenReturn(rules);
+        RuleRegistry loading = new RuleRegistry(repo, builtInRules, mock(PlatformTransactionManager.class), event -> {
+        });
+
+        loading.init();
+
+        RuleRegistry.RuleSnapshot snapshot = loading.current();
+        assertThat(snapshot.rules()).extracting(DynamicRule::getId).containsExactly(rules.get(0).getId());
+        assertThat(snapshot.compiled().size()).isEqualTo(builtInRules.compiled().size() + 1);
+    }
+
+    private static RuleRegistry.RuleCreated created(DynamicRule rule) {
+        return new RuleRegistry.RuleCreated(rule, RuleMapper.toResponse(rule), RuleCompiler.compile(rule));
+    }
+}
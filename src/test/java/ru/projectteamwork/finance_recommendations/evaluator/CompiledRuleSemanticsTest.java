@@ -0,0 +1,205 @@
+package ru.projectteamwork.finance_recommendations.evaluator;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.projectteamwork.finance_recommendations.domain.DynamicRule;
+import ru.projectteamwork.finance_recommendations.domain.enums.QueryType;
+import ru.projectteamwork.finance_recommendations.dto.RecommendationDTO;
+import ru.projectteamwork.finance_recommendations.evaluator.RuleFixture.Tx;
+import ru.projectteamwork.finance_recommendations.repository.UserFactSnapshot;
+import ru.projectteamwork.finance_recommendations.rules.BuiltInRules;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompiledRuleSemanticsTest {
+
+    private static final String CREDIT = "ab138afb-f3ba-4a93-b74f-0fcee86d447f";
+    private static final String INVEST = "147f6a0f-3b91-413b-ab99-87f081d60d5a";
+    private static final String TOP_SAVING = "59efc529-2fff-41af-baff-90ccd7402925";
+
+    private final DynamicRuleEvaluator evaluator = new DynamicRuleEvaluator();
+
+    @Test
+    void compiledRulesMatchBaselineEvaluation() {
+        Random random = new Random(42);
+        Map<UUID, List<Tx>> users = RuleFixture.transactions(random, 300);
+        List<DynamicRule> rules = RuleFixture.rules(random, 200);
+        List<CompiledRule> compiled = rules.stream().map(RuleCompiler::compile).toList();
+        CompiledRuleSet ruleSet = new CompiledRuleSet(compiled);
+
+        int matches = 0;
+        for (Map.Entry<UUID, List<Tx>> user : users.entrySet()) {
+            UserFactSnapshot facts = RuleFixture.snapshot(user.getKey(), user.getValue());
+            byte[] memo = ruleSet.newMemo();
+            for (int r = 0; r < rules.size(); r++) {
+                boolean expected = RuleFixture.baseline(rules.get(r), user.getValue());
+                assertThat(evaluator.evaluate(compiled.get(r), facts))
+                        .as("правило %d, пользователь %s", r, user.getKey()).isEqualTo(expected);
+                assertThat(evaluator.evaluate(ruleSet, r, facts, memo))
+                        .as("правило %d из набора, пользователь %s", r, user.getKey()).isEqualTo(expected);
+                if (expected) matches++;
+            }
+        }
+        // фикстура должна проверять обе ветви, а не только «не подходит»
+        assertThat(matches).isGreaterThan(1000);
+    }
+
+    @Test
+    void reorderingPredicatesDoesNotChangeResults() {
+        Random random = new Random(7);
+        Map<UUID, List<Tx>> users = RuleFixture.transactions(random, 200);
+        List<DynamicRule> rules = RuleFixture.rules(random, 100);
+        CompiledRuleSet ruleSet = new CompiledRuleSet(rules.stream().map(RuleCompiler::compile).toList());
+
+        for (Map.Entry<UUID, List<Tx>> user : users.entrySet()) {
+            UserFactSnapshot facts = RuleFixture.snapshot(user.getKey(), user.getValue());
+            byte[] memo = ruleSet.newMemo();
+            for (int r = 0; r < rules.size(); r++) {
+                evaluator.evaluate(ruleSet, r, facts, memo);
+            }
+        }
+        assertThat(ruleSet.reorder(1)).isPositive();
+
+        for (Map.Entry<UUID, List<Tx>> user : users.entrySet()) {
+            UserFactSnapshot facts = RuleFixture.snapshot(user.getKey(), user.getValue());
+            byte[] memo = ruleSet.newMemo();
+            for (int r = 0; r < rules.size(); r++) {
+                assertThat(evaluator.evaluate(ruleSet, r, facts, memo))
+                        .isEqualTo(RuleFixture.baseline(rules.get(r), user.getValue()));
+            }
+        }
+    }
+
+    @Test
+    void reorderRanksByLookupsAndRejectRate() {
+        FactPredicate pair = new SumPairComparePredicate("DEBIT", "DEPOSIT", Operator.fromSymbol(">"), "DEBIT", "WITHDRAW");
+        FactPredicate userOf = new UserOfPredicate("DEBIT");
+
+        // при равной доле отсечений раньше проверяется условие с меньшим числом обращений к фактам
+        CompiledRuleSet equalRejects = pairThenUserOf(pair, userOf);
+        recordPasses(equalRejects, 0, 50);
+        recordPasses(equalRejects, 1, 50);
+        assertThat(equalRejects.reorder(100)).isEqualTo(1);
+        assertThat(equalRejects.order(0)).containsExactly(1, 0);
+
+        // условие, которое почти всегда отсекает правило, идёт первым, даже если оно дороже
+        CompiledRuleSet pairRejects = pairThenUserOf(pair, userOf);
+        recordPasses(pairRejects, 0, 10);
+        recordPasses(pairRejects, 1, 90);
+        assertThat(pairRejects.reorder(100)).isZero();
+        assertThat(pairRejects.order(0)).containsExactly(0, 1);
+    }
+
+    private static CompiledRuleSet pairThenUserOf(FactPredicate pair, FactPredicate userOf) {
+        return new CompiledRuleSet(List.of(new CompiledRule(UUID.randomUUID(), UUID.randomUUID(),
+                new RecommendationDTO("name", "id", "text"), List.of(pair, userOf), List.of(false, false))));
+    }
+
+    private static void recordPasses(CompiledRuleSet ruleSet, int atomId, int passesOfHundred) {
+        for (int i = 0; i < 100; i++) {
+            ruleSet.record(atomId, i < passesOfHundred);
+        }
+    }
+
+    @Test
+    void depositWithdrawComparesTwoSumsAndRespectsNegate() {
+        UUID userId = UUID.randomUUID();
+        UserFactSnapshot facts = UserFactSnapshot.builder(userId)
+                .add("DEBIT", "DEPOSIT", 100, 1)
+                .add("DEBIT", "WITHDRAW", 50, 2)
+                .add("SAVING", "DEPOSIT", 100, 1)
+                .build();
+
+        assertThat(depositWithdraw(facts, false, "DEBIT", "DEPOSIT", ">", "DEBIT", "WITHDRAW")).isTrue();
+        assertThat(depositWithdraw(facts, true, "DEBIT", "DEPOSIT", ">", "DEBIT", "WITHDRAW")).isFalse();
+        assertThat(depositWithdraw(facts, false, "DEBIT", "DEPOSIT", "<=", "DEBIT", "WITHDRAW")).isFalse();
+        assertThat(depositWithdraw(facts, false, "DEBIT", "DEPOSIT", "=", "SAVING", "DEPOSIT")).isTrue();
+        // отсутствующая сумма равна нулю
+        assertThat(depositWithdraw(facts, false, "CREDIT", "DEPOSIT", "=", "INVEST", "WITHDRAW")).isTrue();
+        assertThat(depositWithdraw(facts, false, "SAVING", "WITHDRAW", "<", "SAVING", "DEPOSIT")).isTrue();
+        // аргументы нормализуются: регистр и пробелы не важны
+        assertThat(depositWithdraw(facts, false, " debit", "Deposit", " > ", "DEBIT", "withdraw ")).isTrue();
+    }
+
+    @Test
+    void activeUserOfNeedsFiveTransactions() {
+        UserFactSnapshot four = UserFactSnapshot.builder(UUID.randomUUID())
+                .add("DEBIT", "DEPOSIT", 10, 3)
+                .add("DEBIT", "WITHDRAW", 10, 1)
+                .build();
+        UserFactSnapshot five = UserFactSnapshot.builder(UUID.randomUUID())
+                .add("DEBIT", "DEPOSIT", 10, 3)
+                .add("DEBIT", "WITHDRAW", 10, 2)
+                .build();
+        FactPredicate active = RuleCompiler.compilePredicate(QueryType.ACTIVE_USER_OF, List.of("DEBIT"));
+
+        assertThat(active.test(four)).isFalse();
+        assertThat(active.test(five)).isTrue();
+    }
+
+    @Test
+    void builtInRulesMatchOriginalProductRules() {
+        Random random = new Random(2024);
+        Map<UUID, List<Tx>> users = RuleFixture.transactions(random, 2000);
+        // порог кредита (списания с дебета больше 100 000) случайными транзакциями почти не достигается
+        for (Map.Entry<UUID, List<Tx>> user : users.entrySet()) {
+            if (random.nextInt(4) == 0) {
+                List<Tx> txs = new ArrayList<>(user.getValue());
+                txs.add(new Tx(user.getKey(), "DEBIT", "DEPOSIT", 80_000 + random.nextInt(100_000)));
+                txs.add(new Tx(user.getKey(), "DEBIT", "WITHDRAW", 80_000 + random.nextInt(100_000)));
+                user.setValue(txs);
+            }
+        }
+        CompiledRuleSet ruleSet = new CompiledRuleSet(new BuiltInRules().compiled());
+        RecommendationEngine engine = new RecommendationEngine(null, null, new SimpleMeterRegistry(), 1);
+
+        Set<String> seen = new HashSet<>();
+        for (Map.Entry<UUID, List<Tx>> user : users.entrySet()) {
+            List<RecommendationDTO> recommendations =
+                    engine.recommend(RuleFixture.snapshot(user.getKey(), user.getValue()), ruleSet, false);
+            List<String> actual = recommendations.stream().map(RecommendationDTO::getId).toList();
+            List<String> expected = originalRules(user.getValue());
+            assertThat(actual).as("пользователь %s", user.getKey()).isEqualTo(expected);
+            seen.addAll(actual);
+        }
+        assertThat(seen).containsExactlyInAnyOrder(CREDIT, INVEST, TOP_SAVING);
+    }
+
+    private boolean depositWithdraw(UserFactSnapshot facts, boolean negate, String... args) {
+        FactPredicate predicate =
+                RuleCompiler.compilePredicate(QueryType.TRANSACTION_SUM_COMPARE_DEPOSIT_WITHDRAW, List.of(args));
+        CompiledRule rule = new CompiledRule(UUID.randomUUID(), UUID.randomUUID(), null,
+                List.of(predicate), List.of(negate));
+        return evaluator.evaluate(rule, facts);
+    }
+
+    /**
+     * Условия удалённых классов CreditRecommendationRule, InvestRecommendationRule и TopSavingRecommendationRule.
+     */
+    private static List<String> originalRules(List<Tx> txs) {
+        int debitDeposits = RuleFixture.sum(txs, "DEBIT", "DEPOSIT");
+        int debitWithdraws = RuleFixture.sum(txs, "DEBIT", "WITHDRAW");
+        int savingDeposits = RuleFixture.sum(txs, "SAVING", "DEPOSIT");
+        boolean hasDebit = RuleFixture.count(txs, "DEBIT") > 0;
+
+        List<String> result = new ArrayList<>();
+        if (RuleFixture.count(txs, "CREDIT") == 0 && debitDeposits > debitWithdraws && debitWithdraws > 100_000) {
+            result.add(CREDIT);
+        }
+        if (hasDebit && RuleFixture.count(txs, "INVEST") == 0 && savingDeposits > 1_000) {
+            result.add(INVEST);
+        }
+        if (hasDebit && debitDeposits > debitWithdraws && (debitDeposits > 50_000 || savingDeposits > 50_000)) {
+            result.add(TOP_SAVING);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,55 @@
+package ru.projectteamwork.finance_recommendations.evaluator;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.projectteamwork.finance_recommendations.domain.service.RuleRegistry;
+import ru.projectteamwork.finance_recommendations.domain.service.RuleStatService;
+import ru.projectteamwork.finance_recommendations.repository.UserFactSnapshot;
+
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RecommendationEngineTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RecommendationEngine engine =
+            new RecommendationEngine(null, new RuleStatService(null, null, null), meterRegistry, 1);
+
+    @Test
+    void timersOfRemovedRulesAreUnregistered() {
+        List<CompiledRule> rules = RuleFixture.rules(new Random(3), 3).stream().map(RuleCompiler::compile).toList();
+        engine.recommend(UserFactSnapshot.empty(UUID.randomUUID()), new CompiledRuleSet(rules));
+        assertThat(ruleTimers()).hasSize(3);
+
+        engine.onRulesPublished(published(rules.subList(0, 1)));
+
+        assertThat(ruleTimers()).extracting(timer -> timer.getId().getTag("rule"))
+                .containsExactly(rules.get(0).getId().toString());
+    }
+
+    @Test
+    void backgroundRunsDoNotTouchTimersOrOrderingStats() {
+        List<CompiledRule> rules = RuleFixture.rules(new Random(4), 3).stream().map(RuleCompiler::compile).toList();
+        CompiledRuleSet ruleSet = new CompiledRuleSet(rules);
+
+        engine.recommend(UserFactSnapshot.empty(UUID.randomUUID()), ruleSet, false);
+
+        assertThat(ruleTimers()).isEmpty();
+        for (int atomId = 0; atomId < ruleSet.atomCount(); atomId++) {
+            assertThat(ruleSet.evaluations(atomId)).isZero();
+        }
+    }
+
+    private List<Timer> ruleTimers() {
+        return List.copyOf(meterRegistry.find("recommendations.rule.evaluation").timers());
+    }
+
+    private static RuleRegistry.RulesPublished published(List<CompiledRule> compiled) {
+        return new RuleRegistry.RulesPublished(
+                new RuleRegistry.RuleSnapshot(1, List.of(), List.of(), new CompiledRuleSet(compiled), 0));
+    }
+}
@@ -0,0 +1,165 @@
+package ru.projectteamwork.finance_recommendations.evaluator;
+
+import ru.projectteamwork.finance_recommendations.domain.DynamicRule;
+import ru.projectteamwork.finance_recommendations.domain.DynamicRuleQuery;
+import ru.projectteamwork.finance_recommendations.domain.enums.QueryType;
+import ru.projectteamwork.finance_recommendations.repository.UserFactSnapshot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Случайные пользователи, транзакции и правила, а также эталонная проверка правил —
+ * построчный перенос исходного DynamicRuleEvaluator, считавшего каждое условие отдельным запросом к транзакциям.
+ */
+public final class RuleFixture {
+
+    public static final String[] PRODUCT_TYPES = {"DEBIT", "CREDIT", "INVEST", "SAVING"};
+    public static final String[] TX_TYPES = {"DEPOSIT", "WITHDRAW"};
+    private static final String[] OPERATORS = {">", "<", "=", ">=", "<="};
+    private static final int[] CONSTANTS = {0, 1_000, 50_000, 100_000};
+
+    public record Tx(UUID userId, String productType, String txType, int amount) {
+    }
+
+    private RuleFixture() {
+    }
+
+    /**
+     * Пользователи с id по возрастанию; у каждого пятого транзакций нет.
+     */
+    public static Map<UUID, List<Tx>> transactions(Random random, int users) {
+        Map<UUID, List<Tx>> result = new HashMap<>();
+        for (int u = 0; u < users; u++) {
+            UUID userId = new UUID(0, u + 1);
+            List<Tx> txs = new ArrayList<>();
+            if (u % 5 != 0) {
+                int count = random.nextInt(15);
+                for (int i = 0; i < count; i++) {
+                    txs.add(new Tx(userId,
+                            PRODUCT_TYPES[random.nextInt(PRODUCT_TYPES.length)],
+                            TX_TYPES[random.nextInt(TX_TYPES.length)],
+                            random.nextInt(40_000)));
+                }
+            }
+            result.put(userId, txs);
+        }
+        return result;
+    }
+
+    public static UserFactSnapshot snapshot(UUID userId, List<Tx> txs) {
+        UserFactSnapshot.Builder builder = UserFactSnapshot.builder(userId);
+        for (Tx tx : txs) {
+            builder.add(tx.productType(), tx.txType(), tx.amount(), 1);
+        }
+        return builder.build();
+    }
+
+    public static List<DynamicRule> rules(Random random, int count) {
+        List<DynamicRule> rules = new ArrayList<>(count);
+        for (int r = 0; r < count; r++) {
+            DynamicRule rule = new DynamicRule();
+            rule.setId(new UUID(1, r + 1));
+            rule.setProductId(new UUID(2, r + 1));
+            rule.setProductName("product-" + r);
+            rule.setProductText("text-" + r);
+            int queries = 1 + random.nextInt(4);
+            for (int q = 0; q < queries; q++) {
+                rule.addQuery(query(random));
+            }
+            rules.add(rule);
+        }
+        return rules;
+    }
+
+    private static DynamicRuleQuery query(Random random) {
+        QueryType type = QueryType.values()[random.nextInt(QueryType.values().length)];
+        String args = switch (type) {
+            case USER_OF, ACTIVE_USER_OF -> json(product(random));
+            case TRANSACTION_SUM_COMPARE -> json(product(random), tx(random), operator(random),
+                    String.valueOf(random.nextBoolean()
+                            ? CONSTANTS[random.nextInt(CONSTANTS.length)]
+                            : random.nextInt(100_000)));
+            case TRANSACTION_SUM_COMPARE_DEPOSIT_WITHDRAW -> json(product(random), tx(random), operator(random),
+                    product(random), tx(random));
+        };
+        DynamicRuleQuery query = new DynamicRuleQuery();
+        query.setQuery(type);
+        query.setArgumentsJson(args);
+        query.setNegate(random.nextInt(3) == 0);
+        return query;
+    }
+
+    /**
+     * Результат правила по исходной семантике: условия по порядку, negate инвертирует условие,
+     * ACTIVE_USER_OF — не меньше пяти транзакций, отсутствующая сумма равна нулю.
+     */
+    public static boolean baseline(DynamicRule rule, List<Tx> txs) {
+        for (DynamicRuleQuery query : rule.getQueries()) {
+            List<String> args = args(query.getArgumentsJson());
+            boolean result = switch (query.getQuery()) {
+                case USER_OF -> count(txs, args.get(0)) > 0;
+                case ACTIVE_USER_OF -> count(txs, args.get(0)) >= 5;
+                case TRANSACTION_SUM_COMPARE -> compare(sum(txs, args.get(0), args.get(1)), args.get(2),
+                        Integer.parseInt(args.get(3)));
+                case TRANSACTION_SUM_COMPARE_DEPOSIT_WITHDRAW -> compare(sum(txs, args.get(0), args.get(1)),
+                        args.get(2), sum(txs, args.get(3), args.get(4)));
+            };
+            if (query.isNegate()) result = !result;
+            if (!result) return false;
+        }
+        return true;
+    }
+
+    public static int count(List<Tx> txs, String productType) {
+        int count = 0;
+        for (Tx tx : txs) {
+            if (tx.productType().equals(productType)) count++;
+        }
+        return count;
+    }
+
+    public static int sum(List<Tx> txs, String productType, String txType) {
+        int sum = 0;
+        for (Tx tx : txs) {
+            if (tx.productType().equals(productType) && tx.txType().equals(txType)) sum += tx.amount();
+        }
+        return sum;
+    }
+
+    private static boolean compare(int left, String operator, int right) {
+        return switch (operator) {
+            case ">" -> left > right;
+            case "<" -> left < right;
+            case "=" -> left == right;
+            case ">=" -> left >= right;
+            case "<=" -> left <= right;
+            default -> throw new IllegalArgumentException(operator);
+        };
+    }
+
+    private static String product(Random random) {
+        return PRODUCT_TYPES[random.nextInt(PRODUCT_TYPES.length)];
+    }
+
+    private static String tx(Random random) {
+        return TX_TYPES[random.nextInt(TX_TYPES.length)];
+    }
+
+    private static String operator(Random random) {
+        return OPERATORS[random.nextInt(OPERATORS.length)];
+    }
+
+    private static String json(String... values) {
+        return "[\"" + String.join("\",\"", values) + "\"]";
+    }
+
+    private static List<String> args(String json) {
+        String body = json.substring(2, json.length() - 2);
+        return List.of(body.split("\",\""));
+    }
+}
@@ -0,0 +1,38 @@
+package ru.projectteamwork.finance_recommendations.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserFactSnapshotTest {
+
+    @Test
+    void aggregatesAndLooksUpTypesIgnoringCase() {
+        UserFactSnapshot facts = UserFactSnapshot.builder(UUID.randomUUID())
+                .add("debit", "deposit", 100, 2)
+                .add("DEBIT", "DEPOSIT", 50, 1)
+                .add("Debit", "Withdraw", 30, 4)
+                .build();
+
+        assertThat(facts.sum("DEBIT", "DEPOSIT")).isEqualTo(150);
+        assertThat(facts.sum("debit", "deposit")).isEqualTo(150);
+        assertThat(facts.getSumExpenses("debit")).isEqualTo(30);
+        assertThat(facts.countTransactions("Debit")).isEqualTo(7);
+        assertThat(facts.hasProductType("debit")).isTrue();
+    }
+
+    @Test
+    void missingFactsAreZero() {
+        UserFactSnapshot facts = UserFactSnapshot.builder(UUID.randomUUID())
+                .add("DEBIT", "DEPOSIT", 100, 1)
+                .build();
+
+        assertThat(facts.sum("SAVING", "DEPOSIT")).isZero();
+        assertThat(facts.sum("DEBIT", "WITHDRAW")).isZero();
+        assertThat(facts.countTransactions("CREDIT")).isZero();
+        assertThat(facts.hasProductType("CREDIT")).isFalse();
+        assertThat(UserFactSnapshot.empty(null).hasProductType("DEBIT")).isFalse();
+    }
+}
@@ -0,0 +1,112 @@
+package ru.projectteamwork.finance_recommendations.repository.impl;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import ru.projectteamwork.finance_recommendations.domain.DynamicRule;
+import ru.projectteamwork.finance_recommendations.evaluator.CompiledRule;
+import ru.projectteamwork.finance_recommendations.evaluator.DynamicRuleEvaluator;
+import ru.projectteamwork.finance_recommendations.evaluator.RuleCompiler;
+import ru.projectteamwork.finance_recommendations.evaluator.RuleFixture;
+import ru.projectteamwork.finance_recommendations.evaluator.RuleFixture.Tx;
+import ru.projectteamwork.finance_recommendations.repository.RuleAudienceRepository;
+import ru.projectteamwork.finance_recommendations.repository.UserFactSnapshot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RuleAudienceRepositoryImplTest {
+
+    private static final int USERS = 400;
+
+    private static SingleConnectionDataSource dataSource;
+    private static RuleAudienceRepositoryImpl repository;
+    private static Map<UUID, List<Tx>> transactions;
+
+    @BeforeAll
+    static void createDatabase() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:rule-audience-test", "sa", "", true);
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("CREATE TABLE users (id UUID PRIMARY KEY, username VARCHAR(255))");
+        jdbc.execute("CREATE TABLE products (id UUID PRIMARY KEY, type VARCHAR(255), name VARCHAR(255))");
+        jdbc.execute("CREATE TABLE transactions (id UUID PRIMARY KEY, product_id UUID, user_id UUID, " +
+                "type VARCHAR(255), amount INT)");
+        jdbc.execute("CREATE INDEX idx_transactions_user ON transactions (user_id)");
+
+        Map<String, UUID> products = new HashMap<>();
+        for (String type : RuleFixture.PRODUCT_TYPES) {
+            UUID id = UUID.randomUUID();
+            products.put(type, id);
+            // тип продукта в БД в нижнем регистре: SQL и снимок фактов сравнивают типы без учёта регистра
+            jdbc.update("INSERT INTO products (id, type, name) VALUES (?, ?, ?)", id, type.toLowerCase(), type);
+        }
+        transactions = new TreeMap<>(RuleFixture.transactions(new Random(11), USERS));
+        List<Object[]> rows = new ArrayList<>();
+        for (Map.Entry<UUID, List<Tx>> user : transactions.entrySet()) {
+            jdbc.update("INSERT INTO users (id, username) VALUES (?, ?)", user.getKey(), user.getKey().toString());
+            for (Tx tx : user.getValue()) {
+                rows.add(new Object[]{UUID.randomUUID(), products.get(tx.productType()), tx.userId(),
+                        tx.txType(), tx.amount()});
+            }
+        }
+        jdbc.batchUpdate("INSERT INTO transactions (id, product_id, user_id, type, amount) VALUES (?, ?, ?, ?, ?)", rows);
+        repository = new RuleAudienceRepositoryImpl(jdbc, 50);
+    }
+
+    @AfterAll
+    static void dropDatabase() {
+        dataSource.destroy();
+    }
+
+    @Test
+    void simulatedAudienceEqualsInMemoryEvaluation() {
+        List<DynamicRule> rules = RuleFixture.rules(new Random(5), 150);
+        List<UserFactSnapshot> snapshots = new ArrayList<>();
+        repository.forEachUserFacts(snapshots::add);
+        assertThat(snapshots).hasSize(USERS);
+
+        DynamicRuleEvaluator evaluator = new DynamicRuleEvaluator();
+        boolean matchedEmpty = false;
+        for (DynamicRule rule : rules) {
+            CompiledRule compiled = RuleCompiler.compile(rule);
+            List<UUID> expected = new ArrayList<>();
+            for (UserFactSnapshot facts : snapshots) {
+                if (evaluator.evaluate(compiled, facts)) {
+                    expected.add(facts.getUserId());
+                }
+            }
+            long baseline = transactions.values().stream().filter(txs -> RuleFixture.baseline(rule, txs)).count();
+
+            RuleAudienceRepository.Audience audience = repository.simulate(compiled, 10);
+
+            assertThat(audience.users()).as("правило %s", rule.getId()).isEqualTo(expected.size());
+            assertThat(audience.users()).isEqualTo(baseline);
+            assertThat(audience.sample()).isEqualTo(expected.subList(0, Math.min(10, expected.size())));
+            matchedEmpty |= evaluator.evaluate(compiled, UserFactSnapshot.empty(null));
+        }
+        // хотя бы одно правило должно подходить пользователям без транзакций (ветка UNION ALL)
+        assertThat(matchedEmpty).isTrue();
+    }
+
+    @Test
+    void streamedFactsMatchFixture() {
+        repository.forEachUserFacts(facts -> {
+            List<Tx> txs = transactions.get(facts.getUserId());
+            for (String product : RuleFixture.PRODUCT_TYPES) {
+                assertThat(facts.countTransactions(product)).isEqualTo(RuleFixture.count(txs, product));
+                for (String txType : RuleFixture.TX_TYPES) {
+                    assertThat(facts.sum(product, txType)).isEqualTo(RuleFixture.sum(txs, product, txType));
+                }
+            }
+        });
+    }
+}
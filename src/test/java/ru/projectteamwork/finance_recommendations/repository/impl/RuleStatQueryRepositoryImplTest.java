@@ -0,0 +1,73 @@
+package ru.projectteamwork.finance_recommendations.repository.impl;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RuleStatQueryRepositoryImplTest {
+
+    private static SingleConnectionDataSource dataSource;
+    private static RuleStatQueryRepositoryImpl repository;
+
+    @BeforeAll
+    static void createDatabase() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:rule-stat-query-test;MODE=PostgreSQL", "sa", "", true);
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("CREATE TABLE dynamic_rule (id UUID PRIMARY KEY)");
+        jdbc.execute("CREATE TABLE dynamic_rule_stat (rule_id UUID PRIMARY KEY, fire_count BIGINT NOT NULL)");
+        jdbc.execute("CREATE TABLE builtin_rule_stat (rule_id UUID PRIMARY KEY, fire_count BIGINT NOT NULL)");
+        Random random = new Random(5);
+        for (int i = 0; i < 40; i++) {
+            UUID id = new UUID(random.nextLong(), random.nextLong());
+            jdbc.update("INSERT INTO dynamic_rule (id) VALUES (?)", id);
+            if (i % 3 != 0) {
+                jdbc.update("INSERT INTO dynamic_rule_stat (rule_id, fire_count) VALUES (?, ?)", id, i);
+            }
+        }
+        for (int i = 0; i < 7; i++) {
+            jdbc.update("INSERT INTO builtin_rule_stat (rule_id, fire_count) VALUES (?, ?)",
+                    new UUID(random.nextLong(), random.nextLong()), 100 + i);
+        }
+        repository = new RuleStatQueryRepositoryImpl(jdbc, 10);
+    }
+
+    @AfterAll
+    static void dropDatabase() {
+        dataSource.destroy();
+    }
+
+    @Test
+    void pagesByCursorMatchFullListing() {
+        Map<UUID, Long> all = new LinkedHashMap<>();
+        repository.forEachFireCount(null, null, all::put);
+        assertThat(all).hasSize(47);
+
+        Map<UUID, Long> paged = new LinkedHashMap<>();
+        UUID cursor = null;
+        while (true) {
+            List<UUID> page = new ArrayList<>();
+            repository.forEachFireCount(cursor, 6, (id, fireCount) -> {
+                page.add(id);
+                paged.put(id, fireCount);
+            });
+            assertThat(page.size()).isLessThanOrEqualTo(6);
+            if (page.size() < 6) {
+                break;
+            }
+            cursor = page.get(page.size() - 1);
+        }
+
+        assertThat(paged).containsExactlyEntriesOf(all);
+    }
+}
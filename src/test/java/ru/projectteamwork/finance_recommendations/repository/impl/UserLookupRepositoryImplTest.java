@@ -0,0 +1,49 @@
+package ru.projectteamwork.finance_recommendations.repository.impl;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserLookupRepositoryImplTest {
+
+    private static final UUID PETR = new UUID(0, 1);
+    private static final UUID ALENA = new UUID(0, 2);
+
+    private static SingleConnectionDataSource dataSource;
+    private static JdbcTemplate jdbc;
+
+    @BeforeAll
+    static void createDatabase() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:user-lookup-test", "sa", "", true);
+        jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("CREATE TABLE users (id UUID PRIMARY KEY, first_name VARCHAR(255), last_name VARCHAR(255))");
+        jdbc.update("INSERT INTO users (id, first_name, last_name) VALUES (?, ?, ?)", PETR, "Пётр", "Ёлкин");
+        jdbc.update("INSERT INTO users (id, first_name, last_name) VALUES (?, ?, ?)", ALENA, "Алена", "Семенова");
+    }
+
+    @AfterAll
+    static void dropDatabase() {
+        dataSource.destroy();
+    }
+
+    @Test
+    void sqlFallbackFoldsYoLikeTheIndex() {
+        UserLookupRepositoryImpl sqlOnly = new UserLookupRepositoryImpl(jdbc, 100);
+        UserLookupRepositoryImpl indexed = new UserLookupRepositoryImpl(jdbc, 100);
+        indexed.init();
+
+        for (String name : List.of("Пётр Ёлкин", "петр елкин", "ПЕТР  ЁЛКИН", "Алёна Семёнова", "алена семенова")) {
+            UUID expected = name.toLowerCase().startsWith("п") ? PETR : ALENA;
+            assertThat(sqlOnly.findUserIdsByFullName(name)).as("SQL: %s", name).containsExactly(expected);
+            assertThat(indexed.findUserIdsByFullName(name)).as("индекс: %s", name).containsExactly(expected);
+        }
+        assertThat(sqlOnly.findUserIdsByFullName("Пётр Иванов")).isEmpty();
+    }
+}
@@ -0,0 +1,99 @@
+package ru.projectteamwork.finance_recommendations.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import ru.projectteamwork.finance_recommendations.domain.service.RuleRegistry;
+import ru.projectteamwork.finance_recommendations.dto.RecommendationDTO;
+import ru.projectteamwork.finance_recommendations.evaluator.RecommendationEngine;
+import ru.projectteamwork.finance_recommendations.repository.PrecomputedRecommendationsRepository;
+import ru.projectteamwork.finance_recommendations.repository.RecommendationsRepository;
+import ru.projectteamwork.finance_recommendations.repository.UserFactSnapshot;
+import ru.projectteamwork.finance_recommendations.repository.UserFactsChanged;
+import ru.projectteamwork.finance_recommendations.repository.UserLookupRepository;
+import ru.projectteamwork.finance_recommendations.rules.BuiltInRules;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RecommendationsPrecomputeJobTest {
+
+    private static final UUID CHANGED = new UUID(0, 1);
+    private static final UUID UNCHANGED = new UUID(0, 2);
+
+    private final UserLookupRepository users = mock(UserLookupRepository.class);
+    private final RecommendationsRepository facts = mock(RecommendationsRepository.class);
+    private final PrecomputedRecommendationsRepository precomputed = mock(PrecomputedRecommendationsRepository.class);
+    private final RecommendationsPrecomputeJob job = new RecommendationsPrecomputeJob(users, facts, precomputed,
+            new RecommendationEngine(null, null, new SimpleMeterRegistry(), 1),
+            new RuleRegistry(null, new BuiltInRules(), null, event -> {
+            }),
+            new SimpleMeterRegistry(), 10, 1);
+
+    @AfterEach
+    void shutdown() {
+        job.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void usersChangedWhileChunkIsComputedAreNotSaved() {
+        when(users.findUserIdsAfter(null, 10)).thenReturn(List.of(CHANGED, UNCHANGED));
+        when(users.findUserIdsAfter(UNCHANGED, 10)).thenReturn(List.of());
+        when(precomputed.findRunningSweep()).thenReturn(Optional.empty());
+        when(precomputed.startSweep(anyLong())).thenReturn(7L);
+        when(facts.loadFacts(anyCollection())).thenAnswer(invocation -> {
+            // новые транзакции пришли, когда факты пачки уже прочитаны
+            Map<UUID, UserFactSnapshot> loaded = Map.of(
+                    CHANGED, UserFactSnapshot.empty(CHANGED),
+                    UNCHANGED, UserFactSnapshot.empty(UNCHANGED));
+            job.onUserFactsChanged(new UserFactsChanged(Set.of(CHANGED)));
+            return loaded;
+        });
+
+        job.sweep();
+
+        ArgumentCaptor<Map<UUID, List<RecommendationDTO>>> saved = ArgumentCaptor.forClass(Map.class);
+        verify(precomputed).saveAll(saved.capture(), anyLong(), eq(7L));
+        assertThat(saved.getValue()).containsOnlyKeys(UNCHANGED);
+        verify(precomputed).saveProgress(7L, UNCHANGED, 2);
+    }
+
+    @Test
+    void rowsOfUsersChangedDuringSaveAreDeletedAfterIt() {
+        when(users.findUserIdsAfter(null, 10)).thenReturn(List.of(CHANGED, UNCHANGED));
+        when(users.findUserIdsAfter(UNCHANGED, 10)).thenReturn(List.of());
+        when(precomputed.findRunningSweep()).thenReturn(Optional.empty());
+        when(precomputed.startSweep(anyLong())).thenReturn(7L);
+        when(facts.loadFacts(anyCollection())).thenReturn(Map.of(
+                CHANGED, UserFactSnapshot.empty(CHANGED),
+                UNCHANGED, UserFactSnapshot.empty(UNCHANGED)));
+        doAnswer(invocation -> {
+            // обработчик события уже удалил строки, а пачка записывает их заново
+            job.onUserFactsChanged(new UserFactsChanged(Set.of(CHANGED)));
+            return null;
+        }).when(precomputed).saveAll(anyMap(), anyLong(), eq(7L));
+
+        job.sweep();
+
+        InOrder order = inOrder(precomputed);
+        order.verify(precomputed).saveAll(anyMap(), anyLong(), eq(7L));
+        order.verify(precomputed).deleteAll(List.of(CHANGED));
+    }
+}
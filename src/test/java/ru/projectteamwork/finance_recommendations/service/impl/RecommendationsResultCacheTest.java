@@ -0,0 +1,106 @@
+package ru.projectteamwork.finance_recommendations.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import ru.projectteamwork.finance_recommendations.domain.service.RuleRegistry;
+import ru.projectteamwork.finance_recommendations.dto.RecommendationDTO;
+import ru.projectteamwork.finance_recommendations.exception.DeadlineExceededException;
+import ru.projectteamwork.finance_recommendations.repository.RequestDeadline;
+import ru.projectteamwork.finance_recommendations.rules.BuiltInRules;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RecommendationsResultCacheTest {
+
+    private static final List<RecommendationDTO> RESULT = List.of(new RecommendationDTO("name", "id", "text"));
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RecommendationsResultCache cache = new RecommendationsResultCache(
+            new ConcurrentMapCacheManager(RecommendationsResultCache.CACHE_NAME),
+            new RuleRegistry(null, new BuiltInRules(), null, null),
+            meterRegistry, 60_000, 300_000, true, 1, 100);
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+        cache.shutdown();
+    }
+
+    @Test
+    void ownerDeadlineDoesNotFailCallersWithoutDeadline() throws Exception {
+        UUID userId = UUID.randomUUID();
+        CountDownLatch ownerStarted = new CountDownLatch(1);
+        CountDownLatch waiterJoined = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        RecommendationsResultCache.Loader loader = (revalidate, deadline) -> {
+            if (loads.incrementAndGet() == 1) {
+                ownerStarted.countDown();
+                await(waiterJoined);
+                throw new DeadlineExceededException("срок владельца истёк");
+            }
+            return RESULT;
+        };
+
+        Future<List<RecommendationDTO>> owner = executor.submit(
+                () -> cache.get(userId, loader, RequestDeadline.after(Duration.ofMillis(50))));
+        await(ownerStarted);
+        Future<List<RecommendationDTO>> waiter = executor.submit(() -> cache.get(userId, loader, null));
+        while (meterRegistry.counter("recommendations.cache.requests", "result", "coalesced").count() < 1) {
+            Thread.onSpinWait();
+        }
+        waiterJoined.countDown();
+
+        assertThat(waiter.get(5, TimeUnit.SECONDS)).isEqualTo(RESULT);
+        assertThatThrownBy(() -> owner.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(DeadlineExceededException.class);
+        assertThat(loads).hasValue(2);
+        assertThat(cache.peek(userId)).isEqualTo(RESULT);
+    }
+
+    @Test
+    void loaderErrorsStillReachCallersThatJoined() throws Exception {
+        UUID userId = UUID.randomUUID();
+        CountDownLatch ownerStarted = new CountDownLatch(1);
+        CountDownLatch waiterJoined = new CountDownLatch(1);
+        RecommendationsResultCache.Loader loader = (revalidate, deadline) -> {
+            ownerStarted.countDown();
+            await(waiterJoined);
+            throw new IllegalStateException("ошибка БД");
+        };
+
+        Future<List<RecommendationDTO>> owner = executor.submit(() -> cache.get(userId, loader, null));
+        await(ownerStarted);
+        CompletableFuture<List<RecommendationDTO>> waiter =
+                CompletableFuture.supplyAsync(() -> cache.get(userId, loader, null), executor);
+        while (meterRegistry.counter("recommendations.cache.requests", "result", "coalesced").count() < 1) {
+            Thread.onSpinWait();
+        }
+        waiterJoined.countDown();
+
+        assertThatThrownBy(() -> owner.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> waiter.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}